@@ -0,0 +1,78 @@
+package org.neo4j.examples.performance.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Node and relationship creation through {@link BatchInserterImpl}. Every
+ * iteration starts from an empty store so that the store files grow the same
+ * way in each iteration.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 3 )
+@Threads( 1 )
+@State( Scope.Thread )
+public class BatchInsertBenchmark
+{
+    static final RelationshipType FAVORITE = DynamicRelationshipType.withName( "FAVORITE" );
+
+    @Param( "create.properties" )
+    public String neo4jConfiguration;
+
+    private File storeDir;
+    private BatchInserter inserter;
+    private long previous;
+
+    @Setup( Level.Iteration )
+    public void open()
+    {
+        storeDir = new File( Stores.storeDir( "BatchInsert" ) );
+        Stores.delete( storeDir );
+        inserter = new BatchInserterImpl( storeDir.getPath(),
+                Stores.configuration( neo4jConfiguration ) );
+        previous = inserter.getReferenceNode();
+    }
+
+    @TearDown( Level.Iteration )
+    public void close()
+    {
+        inserter.shutdown();
+        Stores.delete( storeDir );
+    }
+
+    @Benchmark
+    public long createNode()
+    {
+        return inserter.createNode( null );
+    }
+
+    @Benchmark
+    public long createNodeAndRelationship()
+    {
+        long node = inserter.createNode( null );
+        inserter.createRelationship( node, previous, FAVORITE, null );
+        return previous = node;
+    }
+}
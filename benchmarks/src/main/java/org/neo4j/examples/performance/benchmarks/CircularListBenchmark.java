@@ -0,0 +1,87 @@
+package org.neo4j.examples.performance.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.examples.performance.CircularList;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The single hop {@code getSingleRelationship} chase of
+ * {@link CircularList#traverse(String, String)}, one hop per invocation.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 3 )
+public class CircularListBenchmark
+{
+    static final RelationshipType CIRCLE = DynamicRelationshipType.withName( "CIRCLE" );
+
+    @State( Scope.Benchmark )
+    public static class Ring
+    {
+        @Param( { "1000", "1000000" } )
+        public int length;
+
+        @Param( "" )
+        public String neo4jConfiguration;
+
+        GraphDatabaseService graphDb;
+
+        @Setup
+        public void open() throws IOException
+        {
+            String storeDir = Stores.storeDir( "CircularList", length );
+            if ( Stores.needsBuild( storeDir, CircularList.isBuilt( storeDir ) ) )
+            {
+                Stores.configureExample( "CircularList", storeDir, neo4jConfiguration );
+                CircularList.create( Integer.toString( length ) );
+            }
+            graphDb = new EmbeddedGraphDatabase( storeDir,
+                    Stores.configuration( neo4jConfiguration ) );
+        }
+
+        @TearDown
+        public void close()
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+        Node node;
+
+        @Setup
+        public void start( Ring ring )
+        {
+            node = ring.graphDb.getReferenceNode();
+        }
+    }
+
+    @Benchmark
+    public Node singleHop( Cursor cursor )
+    {
+        return cursor.node = cursor.node.getSingleRelationship( CIRCLE, Direction.OUTGOING ).getEndNode();
+    }
+}
@@ -0,0 +1,82 @@
+package org.neo4j.examples.performance.benchmarks;
+
+import java.io.File;
+import java.util.Map;
+
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Shared store handling for the benchmarks. Stores are created once per
+ * parameter combination by the regular example entry points and reused by
+ * every fork, so the measured kernel sees exactly the data the hand-timed
+ * examples traverse.
+ */
+final class Stores
+{
+    private Stores()
+    {
+    }
+
+    static String storeDir( String name, Object... params )
+    {
+        StringBuilder dir = new StringBuilder( "target/jmh-db/" ).append( name );
+        for ( Object param : params )
+        {
+            dir.append( '-' ).append( param );
+        }
+        return dir.toString();
+    }
+
+    /**
+     * Clear out a store that was left behind by an interrupted build, so the
+     * example can build it again from scratch.
+     *
+     * @return whether the store has to be built.
+     */
+    static boolean needsBuild( String storeDir, boolean built )
+    {
+        if ( built )
+        {
+            return false;
+        }
+        delete( new File( storeDir ) );
+        return true;
+    }
+
+    /**
+     * @return the given configuration, or the one the examples traverse with
+     *         if none is given.
+     */
+    static Map<String, String> configuration( String configFile )
+    {
+        if ( configFile == null || configFile.trim().equals( "" ) )
+        {
+            configFile = "traverse.properties";
+        }
+        return EmbeddedGraphDatabase.loadConfigurations( configFile );
+    }
+
+    /**
+     * Make the examples pick up the same configuration as the benchmark,
+     * since they read it through system properties.
+     */
+    static void configureExample( String example, String storeDir, String configFile )
+    {
+        System.setProperty( example + ".storeDir", storeDir );
+        System.setProperty( example + ".renderProgression", "false" );
+        System.setProperty( "ConfiguredExample.neo4j-config-file", configFile );
+    }
+
+    static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,130 @@
+package org.neo4j.examples.performance.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.examples.performance.UsersAndBooks;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expansion of all users of one book, the inner loop of
+ * {@link UsersAndBooks#traverse()}. Each invocation expands the next book
+ * of the reference node.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 3 )
+public class UsersAndBooksBenchmark
+{
+    static final RelationshipType FAVORITE = DynamicRelationshipType.withName( "FAVORITE" );
+
+    @State( Scope.Benchmark )
+    public static class Catalogue
+    {
+        @Param( { "MIN", "EXPECTED", "MAX" } )
+        public String kind;
+
+        @Param( "1000" )
+        public int numBooks;
+
+        @Param( "100000" )
+        public int numUsers;
+
+        @Param( { "RANDOM_OFFSET", "CLUSTERED", "INTERLEAVED", "SHUFFLED" } )
+        public String layout;
+
+        @Param( "1" )
+        public long seed;
+
+        @Param( "" )
+        public String neo4jConfiguration;
+
+        GraphDatabaseService graphDb;
+        Node start;
+        Node[] books;
+
+        @Setup
+        public void open() throws IOException
+        {
+            String storeDir = Stores.storeDir( "UsersAndBooks", kind, numBooks, numUsers,
+                    layout, seed );
+            if ( Stores.needsBuild( storeDir, UsersAndBooks.isBuilt( storeDir ) ) )
+            {
+                Stores.configureExample( "UsersAndBooks", storeDir, neo4jConfiguration );
+                System.setProperty( "UsersAndBooks.kind", kind );
+                System.setProperty( "UsersAndBooks.numBooks", Integer.toString( numBooks ) );
+                System.setProperty( "UsersAndBooks.numUsers", Integer.toString( numUsers ) );
+                System.setProperty( "UsersAndBooks.layout", layout );
+                System.setProperty( "UsersAndBooks.seed", Long.toString( seed ) );
+                UsersAndBooks.create();
+            }
+            graphDb = new EmbeddedGraphDatabase( storeDir,
+                    Stores.configuration( neo4jConfiguration ) );
+            start = graphDb.getReferenceNode();
+            List<Node> books = new ArrayList<Node>();
+            for ( Relationship rel : start.getRelationships( FAVORITE ) )
+            {
+                books.add( rel.getOtherNode( start ) );
+            }
+            this.books = books.toArray( new Node[books.size()] );
+        }
+
+        @TearDown
+        public void close()
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+        int book;
+
+        Node next( Catalogue catalogue )
+        {
+            Node result = catalogue.books[book++];
+            if ( book == catalogue.books.length )
+            {
+                book = 0;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long bookFanOut( Catalogue catalogue, Cursor cursor )
+    {
+        Node book = cursor.next( catalogue );
+        long count = 0;
+        for ( Relationship rel : book.getRelationships( FAVORITE ) )
+        {
+            if ( !rel.getOtherNode( book ).equals( catalogue.start ) )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,215 @@
+package org.neo4j.examples.performance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates batches of records on several producer threads and hands them to
+ * a single consumer, in sequence order, through a bounded ring of reusable
+ * buffers.
+ * <p>
+ * The consumer runs on the thread calling {@link #run(long, Producer,
+ * Consumer)}, which is what the batch inserter requires. Since batches are
+ * consumed strictly in sequence order the records end up in the store in the
+ * same order as if they were generated on one thread, only the generation
+ * itself is parallel.
+ */
+public final class BatchPipeline
+{
+    public interface Producer
+    {
+        /**
+         * Fill the buffer with the records of one batch. Called concurrently
+         * from all producer threads, but never twice for the same sequence.
+         *
+         * @return the number of records written to the buffer.
+         */
+        int produce( long sequence, long[] records );
+    }
+
+    public interface Consumer
+    {
+        void consume( long[] records, int count );
+    }
+
+    private final int producers;
+    private final int capacity;
+    private final long[][] buffers;
+    private final int[] counts;
+    private final AtomicLongArray published;
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile Throwable failure;
+
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong producerBusy = new AtomicLong();
+    private final AtomicLong producerBlocked = new AtomicLong();
+    private long consumerBusy;
+    private long consumerStarved;
+
+    /**
+     * @param producers the number of producer threads.
+     * @param capacity the number of batches that can be in flight.
+     * @param batchRecords the largest number of records in one batch.
+     * @param recordSize the number of longs per record.
+     */
+    public BatchPipeline( int producers, int capacity, int batchRecords, int recordSize )
+    {
+        this.producers = producers;
+        this.capacity = capacity;
+        this.buffers = new long[capacity][batchRecords * recordSize];
+        this.counts = new int[capacity];
+        this.published = new AtomicLongArray( capacity );
+    }
+
+    /**
+     * Generate and consume the given number of batches. A pipeline can be run
+     * several times, the statistics add up over all runs.
+     */
+    public void run( final long batches, final Producer producer, Consumer consumer )
+    {
+        consumed.set( 0 );
+        nextSequence.set( 0 );
+        for ( int i = 0; i < capacity; i++ )
+        {
+            published.set( i, -1 );
+        }
+        Thread[] threads = new Thread[producers];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i] = new Thread( "BatchPipeline-producer-" + i )
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        produce( batches, producer );
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure = e;
+                    }
+                }
+            };
+            threads[i].setDaemon( true );
+            threads[i].start();
+        }
+        try
+        {
+            consume( batches, consumer );
+        }
+        catch ( Throwable e )
+        {
+            // errors too, or the producers would wait for the consumer forever
+            if ( failure == null )
+            {
+                failure = e;
+            }
+            throw e;
+        }
+        finally
+        {
+            for ( Thread thread : threads )
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void produce( long batches, Producer producer )
+    {
+        long busy = 0, blocked = 0, records = 0;
+        for ( long sequence; ( sequence = nextSequence.getAndIncrement() ) < batches; )
+        {
+            int slot = (int) ( sequence % capacity );
+            long start = System.nanoTime();
+            while ( consumed.get() <= sequence - capacity )
+            {
+                pause();
+            }
+            long ready = System.nanoTime();
+            int count = producer.produce( sequence, buffers[slot] );
+            counts[slot] = count;
+            published.set( slot, sequence );
+            blocked += ready - start;
+            busy += System.nanoTime() - ready;
+            records += count;
+        }
+        produced.addAndGet( records );
+        producerBusy.addAndGet( busy );
+        producerBlocked.addAndGet( blocked );
+    }
+
+    private void consume( long batches, Consumer consumer )
+    {
+        for ( long sequence = 0; sequence < batches; sequence++ )
+        {
+            int slot = (int) ( sequence % capacity );
+            long start = System.nanoTime();
+            while ( published.get( slot ) != sequence )
+            {
+                pause();
+            }
+            long ready = System.nanoTime();
+            consumer.consume( buffers[slot], counts[slot] );
+            consumed.set( sequence + 1 );
+            consumerStarved += ready - start;
+            consumerBusy += System.nanoTime() - ready;
+        }
+    }
+
+    private void pause()
+    {
+        if ( failure != null )
+        {
+            throw new RuntimeException( "Pipeline aborted", failure );
+        }
+        LockSupport.parkNanos( 10000 );
+    }
+
+    /**
+     * @return the records generated per millisecond, on the producers' own
+     *         time, over all producer threads.
+     */
+    public double generationRate()
+    {
+        return produced.get() * producers / ( producerBusy.get() / 1000000.0 );
+    }
+
+    /**
+     * @return the records consumed per millisecond, on the consumer's own
+     *         time.
+     */
+    public double writeRate()
+    {
+        return produced.get() / ( consumerBusy / 1000000.0 );
+    }
+
+    /**
+     * Print the throughput of each stage. Generation and store write are
+     * measured on their own time, excluding the time spent waiting on the
+     * other stage, so the stage with the lower rate is the bottleneck.
+     */
+    public void printStatistics()
+    {
+        long records = produced.get();
+        double generatorMs = producerBusy.get() / 1000000.0;
+        double writerMs = consumerBusy / 1000000.0;
+        System.out.printf( "Generation: %s records, %.3f s busy on %s threads, "
+                           + "%.3f records/ms (%.3f per thread), blocked %.3f s on the writer.%n",
+                records, generatorMs / 1000.0, producers, records * producers / generatorMs,
+                records / generatorMs, producerBlocked.get() / 1000000000.0 );
+        System.out.printf( "Store write: %s records, %.3f s busy, "
+                           + "%.3f records/ms, starved %.3f s waiting for generators.%n",
+                records, writerMs / 1000.0, records / writerMs, consumerStarved / 1000000000.0 );
+    }
+}
@@ -0,0 +1,373 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an example over a matrix of configurations, forking a fresh JVM for
+ * every cell from the classpath this runner was started with, so the sources
+ * are only compiled once.
+ * <p>
+ * The matrix is declared through properties:
+ * <ul>
+ * <li>{@code example}, {@code entry} and {@code arguments} select what to
+ * run in every cell.</li>
+ * <li>{@code setup} is an entry run once for every combination of the
+ * {@code sweep.*} settings before the cells using that combination, typically
+ * {@code create}. Every combination then gets a store of its own in a
+ * directory under {@code storeRoot}, which is removed before the setup runs.
+ * When the setup of a combination fails its cells are skipped. The setup
+ * runs with the {@code jvmOptions} and the {@code setupJvm} options, not
+ * with any of the measured JVM variants.</li>
+ * <li>{@code sweep.<key>=a,b,...} sweeps the example setting {@code key}.</li>
+ * <li>{@code profiles=a,b,...} sweeps named Neo4j configurations, defined as
+ * {@code profile.<name>=key=value;key=value}. The {@code small},
+ * {@code medium} and {@code large} mapped memory profiles are built in.</li>
+ * <li>{@code config.<key>=a,b,...} sweeps a single Neo4j setting, for
+ * example {@code use_old_cache}.</li>
+ * <li>{@code jvms=a,b,...} sweeps named JVM variants, defined as
+ * {@code jvm.<name>=options}. The {@code d32-1024m}, {@code d32-2048m} and
+ * {@code d64-2048m} variants of the original article script are built in.</li>
+ * <li>{@code heaps=a,b,...} sweeps the maximum heap size for the JVM variants
+ * that do not set one, and {@code jvmOptions} are passed to every forked
+ * JVM.</li>
+ * </ul>
+ * A cell that exits with an error or does not produce any results is retried
+ * up to {@code retries} times by the {@link CellRunner}.
+ */
+public class BenchmarkMatrix extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( BenchmarkMatrix.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void run() throws IOException
+    {
+        new BenchmarkMatrix().runMatrix( true );
+    }
+
+    @MainMethod.Entry
+    public static void list() throws IOException
+    {
+        new BenchmarkMatrix().runMatrix( false );
+    }
+
+    private static final Map<String, String> PROFILES = new LinkedHashMap<String, String>();
+    static
+    {
+        PROFILES.put( "small", mappedMemory( "512M" ) );
+        PROFILES.put( "medium", mappedMemory( "1024M" ) );
+        PROFILES.put( "large", mappedMemory( "1536M" ) );
+    }
+
+    private static final Map<String, String> JVMS = new LinkedHashMap<String, String>();
+    static
+    {
+        JVMS.put( "d32-1024m", "-d32 -Xmx1024m" );
+        JVMS.put( "d32-2048m", "-d32 -Xmx2048m" );
+        JVMS.put( "d64-2048m", "-d64 -Xmx2048m" );
+    }
+
+    private static String mappedMemory( String relationshipStore )
+    {
+        return "neostore.nodestore.db.mapped_memory=100M;"
+               + "neostore.relationshipstore.db.mapped_memory=" + relationshipStore + ";"
+               + "neostore.propertystore.db.mapped_memory=0M;"
+               + "neostore.propertystore.db.strings.mapped_memory=0M;"
+               + "neostore.propertystore.db.arrays.mapped_memory=0M;" + "cache_type=soft";
+    }
+
+    private final String example;
+    private final String entry;
+    private final List<String> arguments;
+    private final String setup;
+    private final Map<String, List<String>> sweep;
+    private final Map<String, List<String>> configSweep;
+    private final List<String> profiles;
+    private final Map<String, String> profileDefinitions;
+    private final List<String> jvms;
+    private final Map<String, String> jvmDefinitions;
+    private final List<String> heaps;
+    private final String[] setupJvm;
+    private final File output;
+    private final File results;
+    private final File storeRoot;
+    private final CellRunner runner;
+    private final List<String> failed = new ArrayList<String>();
+
+    private BenchmarkMatrix()
+    {
+        super( null );
+        this.example = stringProperty( "example", "UsersAndBooks" );
+        this.entry = stringProperty( "entry", "traverse" );
+        this.arguments = split( stringProperty( "arguments", "" ), " " );
+        String setup = stringProperty( "setup", "create" );
+        this.setup = setup.trim().equals( "" ) ? null : setup;
+        this.sweep = splitValues( propertiesWithPrefix( "sweep." ) );
+        this.configSweep = splitValues( propertiesWithPrefix( "config." ) );
+        this.profiles = split( stringProperty( "profiles", "" ), "," );
+        this.profileDefinitions = new LinkedHashMap<String, String>( PROFILES );
+        profileDefinitions.putAll( propertiesWithPrefix( "profile." ) );
+        this.jvms = split( stringProperty( "jvms", "" ), "," );
+        this.jvmDefinitions = new LinkedHashMap<String, String>( JVMS );
+        jvmDefinitions.putAll( propertiesWithPrefix( "jvm." ) );
+        this.heaps = split( stringProperty( "heaps", "1024m" ), "," );
+        List<String> setupJvm = split( stringProperty( "setupJvm", "" ), " " );
+        setupJvm.add( 0, "" );
+        this.setupJvm = setupJvm.toArray( new String[setupJvm.size()] );
+        this.output = new File( stringProperty( "output", "target/matrix" ) );
+        this.results = new File( stringProperty( "results", new File( output, "results.json" ).getPath() ) );
+        this.storeRoot = new File( stringProperty( "storeRoot", "target/neo4j-db/" + example
+                                                                + "-matrix" ) );
+        this.runner = new CellRunner( stringProperty( "java", CellRunner.currentJava() ), split(
+                stringProperty( "jvmOptions", "-server" ), " " ), output, intProperty( "retries", 2 ) );
+    }
+
+    static List<String> split( String value, String separator )
+    {
+        List<String> result = new ArrayList<String>();
+        for ( String part : value.split( separator ) )
+        {
+            if ( part.trim().length() > 0 )
+            {
+                result.add( part.trim() );
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, List<String>> splitValues( Map<String, String> properties )
+    {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for ( Map.Entry<String, String> property : properties.entrySet() )
+        {
+            result.put( property.getKey(), split( property.getValue(), "," ) );
+        }
+        return result;
+    }
+
+    /**
+     * @return every combination of one value from each dimension.
+     */
+    private static List<Map<String, String>> combinations( Map<String, List<String>> dimensions )
+    {
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        result.add( new LinkedHashMap<String, String>() );
+        for ( Map.Entry<String, List<String>> dimension : dimensions.entrySet() )
+        {
+            List<Map<String, String>> next = new ArrayList<Map<String, String>>();
+            for ( Map<String, String> partial : result )
+            {
+                for ( String value : dimension.getValue() )
+                {
+                    Map<String, String> combination = new LinkedHashMap<String, String>( partial );
+                    combination.put( dimension.getKey(), value );
+                    next.add( combination );
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    private void runMatrix( boolean execute ) throws IOException
+    {
+        output.mkdirs();
+        List<String> profiles = this.profiles.isEmpty() ? Arrays.asList( (String) null )
+                : this.profiles;
+        List<String[]> jvms = jvmVariants();
+        long start = System.currentTimeMillis();
+        int cells = 0;
+        for ( Map<String, String> settings : combinations( sweep ) )
+        {
+            boolean ready = true;
+            File store = null;
+            if ( setup != null )
+            {
+                if ( !settings.containsKey( "storeDir" ) )
+                {
+                    store = new File( storeRoot, cellName( "store", settings, null, null, null ) );
+                }
+                cells++;
+                ready = runCell( execute, setup, settings, store, null, null, setupJvm );
+            }
+            for ( String profile : profiles )
+            {
+                for ( Map<String, String> config : combinations( configSweep ) )
+                {
+                    for ( String[] jvm : jvms )
+                    {
+                        cells++;
+                        if ( ready )
+                        {
+                            runCell( execute, entry, settings, store, profile, config, jvm );
+                        }
+                        else
+                        {
+                            String cell = cellName( entry, settings, profile, config, jvm[0] );
+                            System.out.println( cell + ": skipped, the setup failed" );
+                            failed.add( cell );
+                        }
+                    }
+                }
+            }
+        }
+        if ( !execute )
+        {
+            return;
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.printf( "Ran %s cells in %.3f seconds, %s retries, %s failed.%n", cells,
+                time / 1000.0, runner.retried(), failed.size() );
+        for ( String cell : failed )
+        {
+            System.out.println( "FAILED: " + cell );
+        }
+        System.out.println( "Results in " + results );
+    }
+
+    /**
+     * @return the options of every JVM variant, each preceded by its name:
+     *         the declared variants, each with every heap size unless it sets
+     *         one itself.
+     */
+    private List<String[]> jvmVariants()
+    {
+        List<String[]> result = new ArrayList<String[]>();
+        for ( String name : jvms.isEmpty() ? Arrays.asList( "" ) : jvms )
+        {
+            List<String> options = new ArrayList<String>();
+            if ( name.length() > 0 )
+            {
+                String definition = jvmDefinitions.get( name );
+                if ( definition == null )
+                {
+                    throw new IllegalArgumentException( "No such JVM variant: " + name );
+                }
+                options.addAll( split( definition, " " ) );
+            }
+            boolean hasHeap = false;
+            for ( String option : options )
+            {
+                hasHeap |= option.startsWith( "-Xmx" );
+            }
+            for ( String heap : hasHeap || heaps.isEmpty() ? Arrays.asList( (String) null ) : heaps )
+            {
+                List<String> variant = new ArrayList<String>();
+                variant.add( name );
+                variant.addAll( options );
+                if ( heap != null )
+                {
+                    variant.set( 0, ( name.length() > 0 ? name + "-" : "" ) + "Xmx" + heap );
+                    variant.add( "-Xmx" + heap );
+                }
+                result.add( variant.toArray( new String[variant.size()] ) );
+            }
+        }
+        return result;
+    }
+
+    private String cellName( String entry, Map<String, String> settings, String profile,
+            Map<String, String> config, String jvm )
+    {
+        StringBuilder name = new StringBuilder( example ).append( '-' ).append( entry );
+        for ( Map.Entry<String, String> setting : settings.entrySet() )
+        {
+            name.append( '-' ).append( setting.getKey() ).append( '=' ).append( setting.getValue() );
+        }
+        if ( profile != null )
+        {
+            name.append( '-' ).append( profile );
+        }
+        if ( config != null )
+        {
+            for ( Map.Entry<String, String> setting : config.entrySet() )
+            {
+                name.append( '-' ).append( setting.getKey() ).append( '=' ).append( setting.getValue() );
+            }
+            if ( jvm != null && jvm.length() > 0 )
+            {
+                name.append( '-' ).append( jvm );
+            }
+        }
+        return name.toString().replaceAll( "[^A-Za-z0-9=._-]", "_" );
+    }
+
+    /**
+     * @param store the store of the settings combination, or {@code null} to
+     *        leave it to the example. The setup removes it before every
+     *        attempt.
+     * @param jvm the name of the JVM variant followed by its options.
+     * @return whether the cell produced results, possibly after retries.
+     */
+    private boolean runCell( boolean execute, String entry, Map<String, String> settings,
+            File store, String profile, Map<String, String> config, String[] jvm )
+            throws IOException
+    {
+        String cell = cellName( entry, settings, profile, config, jvm[0] );
+        if ( !execute )
+        {
+            System.out.println( cell );
+            return true;
+        }
+
+        List<String> options = new ArrayList<String>( Arrays.asList( jvm ).subList( 1, jvm.length ) );
+        for ( Map.Entry<String, String> setting : settings.entrySet() )
+        {
+            options.add( "-D" + example + "." + setting.getKey() + "=" + setting.getValue() );
+        }
+        if ( store != null )
+        {
+            options.add( "-D" + example + ".storeDir=" + store.getPath() );
+        }
+        List<ResultRecord> records = runner.run( cell, options, config == null ? null
+                : configuration( profile, config ), example, entry, arguments,
+                config == null ? store : null );
+        if ( records == null )
+        {
+            failed.add( cell );
+            return false;
+        }
+        for ( ResultRecord record : records )
+        {
+            record.appendTo( results );
+        }
+        return true;
+    }
+
+    /**
+     * @return the settings of the profile, if any, followed by the swept
+     *         settings.
+     */
+    private Map<String, String> configuration( String profile, Map<String, String> config )
+    {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        if ( profile != null )
+        {
+            String definition = profileDefinitions.get( profile );
+            if ( definition == null )
+            {
+                throw new IllegalArgumentException( "No such profile: " + profile );
+            }
+            for ( String line : split( definition, ";" ) )
+            {
+                int equals = line.indexOf( '=' );
+                if ( equals < 0 )
+                {
+                    throw new IllegalArgumentException( "No value in " + line + " of profile "
+                                                        + profile );
+                }
+                result.put( line.substring( 0, equals ).trim(), line.substring( equals + 1 ).trim() );
+            }
+        }
+        result.putAll( config );
+        return result;
+    }
+}
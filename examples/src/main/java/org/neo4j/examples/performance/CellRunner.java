@@ -0,0 +1,221 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs entries of the examples in fresh JVMs, forked from the classpath this
+ * JVM was started with, for the runners that measure one configuration per
+ * process: {@link BenchmarkMatrix}, {@link ConfigurationTuner} and the
+ * startup matrix of {@link UsersAndBooks}.
+ * <p>
+ * Everything a cell writes goes to the output directory under the name of
+ * the cell: its Neo4j configuration to {@code <cell>.neo4j.properties}, its
+ * results to {@code <cell>.json} and its console output to
+ * {@code <cell>.out}, or {@code <cell>.retry<n>.out} for the retries.
+ */
+public final class CellRunner
+{
+    private final String java;
+    private final List<String> jvmOptions;
+    private final File output;
+    private final int retries;
+    private int retried;
+
+    /**
+     * @param java the java executable to fork.
+     * @param jvmOptions the options passed to every forked JVM.
+     * @param output the directory of the files of the cells.
+     * @param retries how many times to run a cell again that exits with an
+     *        error or does not produce any results.
+     */
+    public CellRunner( String java, List<String> jvmOptions, File output, int retries )
+    {
+        this.java = java;
+        this.jvmOptions = jvmOptions;
+        this.output = output;
+        this.retries = retries;
+    }
+
+    /**
+     * @return the java executable of this JVM.
+     */
+    public static String currentJava()
+    {
+        return System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * @return the number of retries so far.
+     */
+    public int retried()
+    {
+        return retried;
+    }
+
+    public File results( String cell )
+    {
+        return new File( output, cell + ".json" );
+    }
+
+    public File log( String cell )
+    {
+        return new File( output, cell + ".out" );
+    }
+
+    /**
+     * Run a cell until it exits normally with results, at most
+     * {@code retries} times more than once, and print how every attempt
+     * went.
+     *
+     * @param options JVM options of this cell, after the common ones.
+     * @param config the Neo4j configuration, or {@code null} for the default
+     *        of the example.
+     * @param clean a directory to remove before every attempt, or
+     *        {@code null}.
+     * @return the results of the cell, or {@code null} if every attempt
+     *         failed.
+     */
+    public List<ResultRecord> run( String cell, List<String> options, Map<String, String> config,
+            String example, String entry, List<String> arguments, File clean ) throws IOException
+    {
+        File results = results( cell );
+        List<String> command = command( cell, options, config, results, example, entry, arguments );
+        for ( int attempt = 0; attempt <= retries; attempt++ )
+        {
+            if ( attempt > 0 )
+            {
+                retried++;
+            }
+            results.delete();
+            if ( clean != null )
+            {
+                deleteRecursively( clean );
+            }
+            File log = attempt == 0 ? log( cell ) : new File( output, cell + ".retry" + attempt
+                                                                       + ".out" );
+            long start = System.currentTimeMillis();
+            int exitCode = fork( command, log );
+            long time = System.currentTimeMillis() - start;
+            if ( exitCode == 0 && results.length() > 0 )
+            {
+                System.out.printf( "%s: done in %.3f seconds%n", cell, time / 1000.0 );
+                return ResultRecord.read( results );
+            }
+            System.out.printf( "%s: failed in %.3f seconds (%s), see %s%n", cell, time / 1000.0,
+                    exitCode != 0 ? "exit code " + exitCode : "no results", log );
+        }
+        return null;
+    }
+
+    /**
+     * @param results the file the cell writes its results to, or
+     *        {@code null} for none, even if this JVM writes results.
+     * @return the command running an entry of an example in a new JVM.
+     */
+    public List<String> command( String cell, List<String> options, Map<String, String> config,
+            File results, String example, String entry, List<String> arguments )
+            throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add( java );
+        command.addAll( jvmOptions );
+        command.addAll( options );
+        if ( config != null )
+        {
+            command.add( "-DConfiguredExample.neo4j-config-file="
+                         + writeConfiguration( cell, config ).getPath() );
+        }
+        command.add( "-DConfiguredExample.results=" + ( results == null ? "" : results.getPath() ) );
+        command.add( "-cp" );
+        command.add( System.getProperty( "java.class.path" ) );
+        command.add( getClass().getPackage().getName() + "." + example );
+        command.add( entry );
+        command.addAll( arguments );
+        return command;
+    }
+
+    /**
+     * @return the file the configuration was written to, named after the
+     *         cell.
+     */
+    public File writeConfiguration( String cell, Map<String, String> config ) throws IOException
+    {
+        output.mkdirs();
+        File file = new File( output, cell + ".neo4j.properties" );
+        Writer out = new FileWriter( file );
+        try
+        {
+            for ( Map.Entry<String, String> setting : config.entrySet() )
+            {
+                out.write( setting.getKey() + "=" + setting.getValue() + "\n" );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Run a command to completion with its output written to the log.
+     *
+     * @return the exit code.
+     */
+    public static int fork( List<String> command, File log ) throws IOException
+    {
+        log.getAbsoluteFile().getParentFile().mkdirs();
+        Process process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+        process.getOutputStream().close();
+        OutputStream out = new FileOutputStream( log );
+        try
+        {
+            copy( process.getInputStream(), out );
+            return process.waitFor();
+        }
+        catch ( InterruptedException e )
+        {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for " + log );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void copy( InputStream in, OutputStream out ) throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        for ( int read; ( read = in.read( buffer ) ) != -1; )
+        {
+            out.write( buffer, 0, read );
+        }
+    }
+
+    static void deleteRecursively( File file ) throws IOException
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                deleteRecursively( child );
+            }
+        }
+        if ( file.exists() && !file.delete() )
+        {
+            throw new IOException( "Could not delete " + file );
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+
+public class CircularList extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( CircularList.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void create( String length ) throws IOException
+    {
+        final long start = System.currentTimeMillis();
+
+        CircularList example = new CircularList();
+        Ring ring = example.ring( Integer.parseInt( length ) );
+        example.create( example.storeDir, ring );
+
+        long time = System.currentTimeMillis() - start;
+        System.out.printf( "Inserted %s nodes and %s relationships in %.3f seconds%n", ring.nodes(),
+                ring.relationships(), time / 1000.0 );
+        example.report( ring.describe( example.result( "create", "nodes" ) ).throughput(
+                ring.nodes() / (double) time, "nodes/ms" ) );
+    }
+
+    /**
+     * Continue a {@code create} that was interrupted, from its last
+     * checkpoint.
+     */
+    @MainMethod.Entry
+    public static void resume() throws IOException
+    {
+        final long start = System.currentTimeMillis();
+
+        CircularList example = new CircularList();
+        DatasetCheckpoint checkpoint = DatasetCheckpoint.load( example.storeDir );
+        Ring ring = Ring.load( checkpoint );
+        long position = checkpoint.getLong( "position" );
+        if ( position >= ring.steps() )
+        {
+            System.out.println( "The build of " + example.storeDir + " is already finished." );
+            return;
+        }
+        checkpoint.verifyHighIds();
+        System.out.printf( "Resuming %s at step %s of %s%n", ring.name(), position, ring.steps() );
+        example.build( example.storeDir, ring, checkpoint );
+
+        long time = System.currentTimeMillis() - start;
+        System.out.printf( "Finished %s nodes and %s relationships in %.3f seconds%n", ring.nodes(),
+                ring.relationships(), time / 1000.0 );
+    }
+
+    /**
+     * @return whether the directory holds a ring whose build ran to the end.
+     */
+    public static boolean isBuilt( String storeDir )
+    {
+        DatasetCheckpoint checkpoint;
+        try
+        {
+            checkpoint = DatasetCheckpoint.load( storeDir );
+        }
+        catch ( IOException noStore )
+        {
+            return false;
+        }
+        return checkpoint.getLong( "position" ) >= Ring.load( checkpoint ).steps();
+    }
+
+    @MainMethod.Entry
+    public static void traverse( String runs, String seconds ) throws IOException
+    {
+        new CircularList().traverseGraph( Integer.parseInt( runs ),
+                Integer.parseInt( seconds ) * 1000 );
+    }
+
+    @MainMethod.Entry
+    public static void scale( String runs, String seconds ) throws IOException
+    {
+        new CircularList().scaleGraph( Integer.parseInt( runs ),
+                Integer.parseInt( seconds ) * 1000 );
+    }
+
+    @MainMethod.Entry
+    public static void variants( String length, String runs, String seconds ) throws IOException
+    {
+        new CircularList().compareVariants( Integer.parseInt( length ), Integer.parseInt( runs ),
+                Integer.parseInt( seconds ) * 1000 );
+    }
+
+    private static final String DEFAULT_VARIANTS = "bare;extraTypes=4;decoys=4;nodePayload=64;"
+            + "relationshipPayload=64;extraTypes=4,decoys=4,nodePayload=64,relationshipPayload=64";
+
+    private final String storeDir;
+    private final int threads;
+    private final int checkpointSeconds;
+
+    private CircularList()
+    {
+        super( null );
+        this.storeDir = getStoreDir();
+        this.threads = intProperty( "threads", 1 );
+        this.checkpointSeconds = intProperty( "checkpointSeconds", 600 );
+    }
+
+    enum Types implements RelationshipType
+    {
+        CIRCLE
+    }
+
+    /**
+     * The shape of a ring. Every node of the ring has one outgoing
+     * {@code CIRCLE} relationship to the next node, and in addition:
+     * <ul>
+     * <li>{@code extraTypes} outgoing relationships of as many other types,
+     * to nodes further along the ring,</li>
+     * <li>{@code decoys} incoming {@code CIRCLE} relationships, each from a
+     * node of its own outside the ring, which a hop has to filter out by
+     * direction, and</li>
+     * <li>a byte array property of {@code nodePayload} bytes on every node
+     * and {@code relationshipPayload} bytes on every relationship, when
+     * not zero.</li>
+     * </ul>
+     * The ring nodes have ids 0 to length - 1 and the decoy nodes follow. The
+     * shape is saved with the store, so the traversals know it, together
+     * with the position of the build.
+     */
+    static final class Ring
+    {
+        final long length;
+        final int extraTypes;
+        final int decoys;
+        final int nodePayload;
+        final int relationshipPayload;
+
+        Ring( long length, int extraTypes, int decoys, int nodePayload, int relationshipPayload )
+        {
+            this.length = length;
+            this.extraTypes = extraTypes;
+            this.decoys = decoys;
+            this.nodePayload = nodePayload;
+            this.relationshipPayload = relationshipPayload;
+        }
+
+        /**
+         * @return the ring described by a variant such as
+         *         {@code extraTypes=4,decoys=2}, with zero for everything not
+         *         mentioned, or {@code bare}.
+         */
+        static Ring parse( long length, String variant )
+        {
+            Map<String, Integer> values = new HashMap<String, Integer>();
+            for ( String setting : BenchmarkMatrix.split( variant, "," ) )
+            {
+                if ( setting.equals( "bare" ) )
+                {
+                    continue;
+                }
+                int equals = setting.indexOf( '=' );
+                if ( equals < 0 )
+                {
+                    throw new IllegalArgumentException( "Not a ring variant setting: " + setting );
+                }
+                values.put( setting.substring( 0, equals ).trim(), Integer.parseInt( setting.substring(
+                        equals + 1 ).trim() ) );
+            }
+            Ring ring = new Ring( length, value( values, "extraTypes" ), value( values, "decoys" ),
+                    value( values, "nodePayload" ), value( values, "relationshipPayload" ) );
+            if ( !values.isEmpty() )
+            {
+                throw new IllegalArgumentException( "Unknown ring variant settings " + values.keySet() );
+            }
+            return ring;
+        }
+
+        private static int value( Map<String, Integer> values, String key )
+        {
+            Integer value = values.remove( key );
+            return value == null ? 0 : value;
+        }
+
+        /**
+         * @return the ring saved with the store, or for stores created before
+         *         the shape was saved a bare ring of the length found from
+         *         the node ids.
+         */
+        static Ring load( String storeDir, GraphDatabaseService graphDb )
+        {
+            DatasetCheckpoint saved;
+            try
+            {
+                saved = DatasetCheckpoint.load( storeDir );
+            }
+            catch ( IOException noShape )
+            {
+                return new Ring( ringLength( graphDb ), 0, 0, 0, 0 );
+            }
+            Ring ring = load( saved );
+            if ( Long.parseLong( saved.get( "position", String.valueOf( ring.steps() ) ) ) < ring.steps() )
+            {
+                throw new IllegalStateException( "The build of " + storeDir
+                                                 + " is not finished, resume it first." );
+            }
+            return ring;
+        }
+
+        static Ring load( DatasetCheckpoint saved )
+        {
+            return new Ring( saved.getLong( "length" ), saved.getInt( "extraTypes" ),
+                    saved.getInt( "decoys" ), saved.getInt( "nodePayload" ),
+                    saved.getInt( "relationshipPayload" ) );
+        }
+
+        DatasetCheckpoint save( DatasetCheckpoint checkpoint )
+        {
+            return checkpoint.set( "length", length ).set( "extraTypes", extraTypes ).set( "decoys",
+                    decoys ).set( "nodePayload", nodePayload ).set( "relationshipPayload",
+                    relationshipPayload );
+        }
+
+        long nodes()
+        {
+            return length * ( 1 + decoys );
+        }
+
+        long relationships()
+        {
+            return length * ( 1 + extraTypes + decoys );
+        }
+
+        /**
+         * @return the number of records the build inserts, one at a time.
+         */
+        long steps()
+        {
+            return nodes() + relationships();
+        }
+
+        String name()
+        {
+            StringBuilder name = new StringBuilder();
+            append( name, "extraTypes", extraTypes );
+            append( name, "decoys", decoys );
+            append( name, "nodePayload", nodePayload );
+            append( name, "relationshipPayload", relationshipPayload );
+            return name.length() == 0 ? "bare" : name.toString();
+        }
+
+        private static void append( StringBuilder name, String key, int value )
+        {
+            if ( value != 0 )
+            {
+                name.append( name.length() == 0 ? "" : "," ).append( key ).append( '=' ).append( value );
+            }
+        }
+
+        ResultRecord describe( ResultRecord record )
+        {
+            return record.set( "params", "length", length ).set( "params", "extraTypes", extraTypes ).set(
+                    "params", "decoys", decoys ).set( "params", "nodePayload", nodePayload ).set(
+                    "params", "relationshipPayload", relationshipPayload );
+        }
+    }
+
+    /**
+     * @return a ring of the given length shaped by the {@code extraTypes},
+     *         {@code decoys}, {@code nodePayload} and
+     *         {@code relationshipPayload} properties.
+     */
+    private Ring ring( int length )
+    {
+        return new Ring( length, intProperty( "extraTypes", 0 ), intProperty( "decoys", 0 ),
+                intProperty( "nodePayload", 0 ), intProperty( "relationshipPayload", 0 ) );
+    }
+
+    private void create( String dir, Ring ring ) throws IOException
+    {
+        DatasetCheckpoint.requireEmpty( dir );
+        build( dir, ring, ring.save( DatasetCheckpoint.create( dir ) ).set( "position", 0 ) );
+    }
+
+    /**
+     * Insert the records of the ring from the position of the checkpoint on.
+     * Every {@code checkpointSeconds} the batch inserter is shut down, which
+     * writes everything inserted so far to the store, and the position is
+     * saved with the high ids of the store before the inserter is opened
+     * again.
+     */
+    private void build( String dir, Ring ring, DatasetCheckpoint checkpoint ) throws IOException
+    {
+        checkpoint.setHighIds().save();
+        Map<String, Object> nodeProperties = payload( ring.nodePayload );
+        Map<String, Object> relationshipProperties = payload( ring.relationshipPayload );
+        long step = checkpoint.getLong( "position" ), steps = ring.steps();
+        long nextCheckpoint = System.currentTimeMillis() + checkpointSeconds * 1000L;
+        BatchInserter insterter = new BatchInserterImpl( dir, neo4jConfiguration );
+        try
+        {
+            for ( ; step < steps; step++ )
+            {
+                insert( insterter, ring, step, nodeProperties, relationshipProperties );
+                if ( checkpointSeconds > 0 && ( step + 1 ) % 65536 == 0
+                     && System.currentTimeMillis() >= nextCheckpoint )
+                {
+                    insterter.shutdown();
+                    checkpoint.set( "position", step + 1 ).setHighIds().save();
+                    System.out.printf( "Checkpoint at step %s of %s%n", step + 1, steps );
+                    nextCheckpoint = System.currentTimeMillis() + checkpointSeconds * 1000L;
+                    insterter = new BatchInserterImpl( dir, neo4jConfiguration );
+                }
+            }
+        }
+        finally
+        {
+            insterter.shutdown();
+            checkpoint.set( "position", step ).setHighIds().save();
+        }
+    }
+
+    /**
+     * Insert one record of the ring. The steps are, each once for every node
+     * of the ring: the ring nodes, the {@code CIRCLE} relationships, the
+     * relationships of every extra type, the decoy nodes of every decoy and
+     * their relationships.
+     */
+    private static void insert( BatchInserter insterter, Ring ring, long step,
+            Map<String, Object> nodeProperties, Map<String, Object> relationshipProperties )
+    {
+        long len = ring.length;
+        long id = step % len;
+        long round = step / len;
+        if ( round == 0 )
+        {
+            if ( id == 0 )
+            {
+                if ( nodeProperties != null )
+                {
+                    insterter.setNodeProperties( 0, nodeProperties );
+                }
+            }
+            else
+            {
+                insterter.createNode( id, nodeProperties );
+            }
+        }
+        else if ( round == 1 )
+        {
+            insterter.createRelationship( id, ( id + 1 ) % len, Types.CIRCLE,
+                    relationshipProperties );
+        }
+        else if ( round < 2 + ring.extraTypes )
+        {
+            /* Created after the ring, so that they come before the CIRCLE
+             * relationship in the relationship chain of every node, and every
+             * hop has to skip past them.
+             */
+            long type = round - 1;
+            insterter.createRelationship( id, ( id + type + 1 ) % len,
+                    DynamicRelationshipType.withName( "EXTRA_" + type ), relationshipProperties );
+        }
+        else if ( round < 2 + ring.extraTypes + ring.decoys )
+        {
+            insterter.createNode( len + step - ( 2 + ring.extraTypes ) * len, nodeProperties );
+        }
+        else
+        {
+            long decoy = len + step - ( 2 + ring.extraTypes + ring.decoys ) * len;
+            insterter.createRelationship( decoy, id, Types.CIRCLE, relationshipProperties );
+        }
+    }
+
+    private static Map<String, Object> payload( int size )
+    {
+        return size > 0 ? Collections.<String, Object>singletonMap( "payload", new byte[size] ) : null;
+    }
+
+    /**
+     * Create every variant of the {@code variants} property, separated by
+     * semicolons, in a store of its own named by the length and the variant,
+     * unless a finished build of the same ring is there already, and walk it
+     * like {@code traverse} with the shape saved in the store. Reports the
+     * best run of every variant and how it compares to the first one.
+     */
+    private void compareVariants( int length, int runCount, int msTime ) throws IOException
+    {
+        List<String> variants = BenchmarkMatrix.split( stringProperty( "variants", DEFAULT_VARIANTS ),
+                ";" );
+        Ring[] rings = new Ring[variants.size()];
+        for ( int i = 0; i < rings.length; i++ )
+        {
+            rings[i] = Ring.parse( length, variants.get( i ) );
+        }
+        double[] speed = new double[rings.length];
+        LatencyHistogram latency = new LatencyHistogram();
+        for ( int i = 0; i < rings.length; i++ )
+        {
+            Ring ring = rings[i];
+            File dir = new File( storeDir + "-variants", ring.length + "-" + ring.name() );
+            if ( isBuilt( dir, ring ) )
+            {
+                System.out.println( "Reusing " + dir );
+            }
+            else
+            {
+                System.out.println( "Creating " + dir );
+                CellRunner.deleteRecursively( dir );
+                create( dir.getPath(), ring );
+            }
+            GraphDatabaseService graphDb = new EmbeddedGraphDatabase( dir.getPath(),
+                    neo4jConfiguration );
+            try
+            {
+                ring = Ring.load( dir.getPath(), graphDb );
+                for ( int run = 0; run < runCount; run++ )
+                {
+                    latency.reset();
+                    Map<String, Long> before = IntrospectionAttribute.sampleAll();
+                    ResultRecord result = walk( graphDb, ring, threads, msTime, latency );
+                    report( ioPerRelationship( introspectionDeltas( result, before, true ),
+                            (long) result.getDouble( "metrics.relationships" ) ) );
+                    speed[i] = Math.max( speed[i], result.getDouble( "throughput" ) );
+                }
+            }
+            finally
+            {
+                graphDb.shutdown();
+            }
+        }
+        System.out.println( "variant\tnodes\trelationships\thops/ms\trelative" );
+        for ( int i = 0; i < rings.length; i++ )
+        {
+            System.out.printf( "%s\t%s\t%s\t%.3f\t%.2f%n", rings[i].name(), rings[i].nodes(),
+                    rings[i].relationships(), speed[i], speed[i] / speed[0] );
+        }
+    }
+
+    /**
+     * @return whether the directory holds a finished build of the ring.
+     */
+    private static boolean isBuilt( File dir, Ring ring )
+    {
+        DatasetCheckpoint checkpoint;
+        try
+        {
+            checkpoint = DatasetCheckpoint.load( dir.getPath() );
+        }
+        catch ( IOException noStore )
+        {
+            return false;
+        }
+        Ring built = Ring.load( checkpoint );
+        return built.length == ring.length && built.name().equals( ring.name() )
+               && Long.parseLong( checkpoint.get( "position", String.valueOf( built.steps() ) ) ) >= built.steps();
+    }
+
+    private void traverseGraph( final int runCount, final int msTime )
+    {
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+
+        try
+        {
+            Ring ring = Ring.load( storeDir, graphDb );
+            LatencyHistogram latency = new LatencyHistogram();
+            SteadyState steadyState = steadyState();
+            List<ResultRecord> runs = new ArrayList<ResultRecord>();
+            for ( int i = 0; i < runCount; i++ )
+            {
+                latency.reset();
+                Map<String, Long> before = IntrospectionAttribute.sampleAll();
+                ResultRecord result = introspectionDeltas( walk( graphDb, ring, threads, msTime,
+                        latency ), before, true );
+                ioPerRelationship( result, (long) result.getDouble( "metrics.relationships" ) );
+                double speed = result.getDouble( "throughput" );
+                if ( steadyState == null )
+                {
+                    report( result );
+                }
+                else
+                {
+                    runs.add( result );
+                    if ( steadyState.add( speed ) )
+                    {
+                        break;
+                    }
+                }
+            }
+            if ( steadyState != null )
+            {
+                steadyState.printSummary( "hops/ms" );
+                for ( int i = 0; i < runs.size(); i++ )
+                {
+                    report( runs.get( i ).set( "params", "phase", steadyState.phase( i ) ) );
+                }
+            }
+
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    private void scaleGraph( final int runCount, final int msTime )
+    {
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for ( int walkers = 1; walkers < threads; walkers *= 2 )
+        {
+            threadCounts.add( walkers );
+        }
+        threadCounts.add( Math.max( 1, threads ) );
+        double[] speed = new double[threadCounts.size()];
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+        try
+        {
+            Ring ring = Ring.load( storeDir, graphDb );
+            LatencyHistogram latency = new LatencyHistogram();
+            for ( int i = 0; i < speed.length; i++ )
+            {
+                for ( int run = 0; run < runCount; run++ )
+                {
+                    latency.reset();
+                    Map<String, Long> before = IntrospectionAttribute.sampleAll();
+                    ResultRecord result = walk( graphDb, ring, threadCounts.get( i ), msTime,
+                            latency );
+                    report( ioPerRelationship( introspectionDeltas( result, before, true ),
+                            (long) result.getDouble( "metrics.relationships" ) ) );
+                    speed[i] = Math.max( speed[i], result.getDouble( "throughput" ) );
+                }
+            }
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+        System.out.println( "threads\thops/ms\thops/ms/thread\tspeedup" );
+        for ( int i = 0; i < speed.length; i++ )
+        {
+            int walkers = threadCounts.get( i );
+            System.out.printf( "%d\t%.3f\t%.3f\t%.2f%n", walkers, speed[i], speed[i] / walkers,
+                    speed[i] / speed[0] );
+        }
+    }
+
+    /**
+     * Walk the ring with a number of threads for the given time, starting at
+     * evenly spaced offsets around the ring so that the walkers do not read
+     * the same records at the same time.
+     *
+     * @return the result of the walk, not yet reported.
+     */
+    private ResultRecord walk( GraphDatabaseService graphDb, Ring ring, int walkers,
+            final long msTime, LatencyHistogram latency )
+    {
+        final long[] count = new long[walkers];
+        long time = System.currentTimeMillis();
+        if ( walkers == 1 )
+        {
+            count[0] = traverseNode( graphDb.getReferenceNode(), msTime, latency );
+        }
+        else
+        {
+            long length = ring.length;
+            final LatencyHistogram[] walkerLatency = new LatencyHistogram[walkers];
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            ExecutorService pool = Executors.newFixedThreadPool( walkers );
+            try
+            {
+                for ( int i = 0; i < walkers; i++ )
+                {
+                    final Node start = graphDb.getNodeById( length * i / walkers );
+                    final LatencyHistogram hops = walkerLatency[i] = new LatencyHistogram();
+                    results.add( pool.submit( new Callable<Long>()
+                    {
+                        public Long call()
+                        {
+                            return traverseNode( start, msTime, hops );
+                        }
+                    } ) );
+                }
+                for ( int i = 0; i < walkers; i++ )
+                {
+                    count[i] = results.get( i ).get();
+                    latency.add( walkerLatency[i] );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Traversal interrupted", e );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new RuntimeException( "Traversal failed", e.getCause() );
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+        }
+        time = System.currentTimeMillis() - time;
+
+        long total = 0;
+        double slowest = Double.MAX_VALUE, fastest = 0;
+        for ( int i = 0; i < walkers; i++ )
+        {
+            double speed = ( (double) count[i] ) / ( (double) time );
+            if ( walkers > 1 )
+            {
+                System.out.printf( "Walker %s: %.3f hops/ms%n", i, speed );
+            }
+            slowest = Math.min( slowest, speed );
+            fastest = Math.max( fastest, speed );
+            total += count[i];
+        }
+        double speed = ( (double) total ) / ( (double) time );
+        System.out.printf( "Traversal speed %.3f hops/ms (%.3f per thread) using %s threads%n",
+                speed, speed / walkers, walkers );
+        System.out.println( "Hop latency " + latency );
+        return ring.describe( result( "traverse", "hops" ) ).set( "params", "threads", walkers ).throughput(
+                speed, "hops/ms" ).latency( latency ).set( "metrics", "hopsPerThread",
+                speed / walkers ).set( "metrics", "slowestThread", slowest ).set( "metrics",
+                "fastestThread", fastest ).set( "metrics", "relationships", total );
+    }
+
+    /**
+     * Find the length of the ring from the node ids, which the batch inserter
+     * assigned contiguously from zero, with a binary search.
+     */
+    private static long ringLength( GraphDatabaseService graphDb )
+    {
+        long low = 0, high = 1;
+        while ( exists( graphDb, high ) )
+        {
+            low = high;
+            high *= 2;
+        }
+        while ( high - low > 1 )
+        {
+            long middle = ( low + high ) >>> 1;
+            if ( exists( graphDb, middle ) )
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private static boolean exists( GraphDatabaseService graphDb, long id )
+    {
+        try
+        {
+            graphDb.getNodeById( id );
+            return true;
+        }
+        catch ( NotFoundException e )
+        {
+            return false;
+        }
+    }
+
+    private long traverseNode( Node node, long msTime, LatencyHistogram latency )
+    {
+        final long start = System.currentTimeMillis();
+        long count = 0;
+
+        while ( System.currentTimeMillis() - start < msTime )
+        {
+            /* Only time the first hop of every batch. Reading the clock around
+             * every hop would cost about as much as the hop itself.
+             */
+            long hop = System.nanoTime();
+            node = node.getSingleRelationship( Types.CIRCLE, Direction.OUTGOING ).getEndNode();
+            latency.record( System.nanoTime() - hop );
+            count++;
+            for ( int i = 1; i < 100; i++, count++ )
+            {
+                node = node.getSingleRelationship( Types.CIRCLE, Direction.OUTGOING ).getEndNode();
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Runs the books to users count of {@link UsersAndBooks} over a
+ * {@link CompressedSparseRows compressed sparse row} export of the same
+ * store, as a baseline for what the kernel traversal could achieve on read
+ * only data.
+ */
+public class CompressedAdjacency extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( CompressedAdjacency.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void export() throws IOException
+    {
+        new CompressedAdjacency( "traverse.properties" ).exportGraph();
+    }
+
+    @MainMethod.Entry
+    public static void traverse() throws IOException
+    {
+        new CompressedAdjacency( "traverse.properties" ).traverseGraph();
+    }
+
+    private final RelationshipType FAVORITE = DynamicRelationshipType.withName( "FAVORITE" );
+    private final String storeDir;
+    private final File file;
+    private final int numTraversals;
+
+    private CompressedAdjacency( String neo4j_config_file )
+    {
+        super( neo4j_config_file );
+        this.storeDir = stringProperty( "storeDir", "target/neo4j-db/UsersAndBooks" );
+        this.file = new File( stringProperty( "file", "target/UsersAndBooks.csr" ) );
+        this.numTraversals = intProperty( "numTraversals", 2 );
+    }
+
+    private void exportGraph() throws IOException
+    {
+        System.out.println( "Exporting " + storeDir + " to " + file );
+        long time = System.currentTimeMillis();
+        CompressedSparseRows.Writer writer = new CompressedSparseRows.Writer( file );
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( storeDir, neo4jConfiguration );
+        try
+        {
+            for ( Node node : graphdb.getAllNodes() )
+            {
+                if ( node.getId() < writer.nodeCount() )
+                {
+                    throw new IllegalStateException( "Nodes not visited in id order" );
+                }
+                while ( writer.nodeCount() < node.getId() )
+                {
+                    writer.endNode(); // unused id
+                }
+                for ( Relationship rel : node.getRelationships( FAVORITE ) )
+                {
+                    writer.addNeighbour( rel.getOtherNode( node ).getId() );
+                }
+                writer.endNode();
+            }
+        }
+        finally
+        {
+            graphdb.shutdown();
+            writer.close();
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println( "Exported " + writer.nodeCount() + " nodes in " + ( time / 1000.0 )
+                            + " seconds." );
+    }
+
+    private void traverseGraph() throws IOException
+    {
+        CompressedSparseRows csr = CompressedSparseRows.open( file );
+        long storeSize = new File( storeDir, "neostore.nodestore.db" ).length()
+                         + new File( storeDir, "neostore.relationshipstore.db" ).length();
+        System.out.printf( "Adjacency file is %.3f MB for %s nodes and %s neighbour entries, "
+                           + "node and relationship stores are %.3f MB.%n", csr.size() / 1048576.0,
+                csr.nodeCount(), csr.neighbourCount(), storeSize / 1048576.0 );
+        for ( int i = 0; i < numTraversals; i++ )
+        {
+            traverse( csr );
+        }
+    }
+
+    private void traverse( CompressedSparseRows csr )
+    {
+        System.out.println( "Traversing adjacency file" );
+        LatencyHistogram bookLatency = new LatencyHistogram();
+        long count = 0, books = 0;
+        long time = System.currentTimeMillis();
+        final int start = 0; // the reference node
+        for ( long b = csr.offset( start ), bEnd = csr.offset( start + 1 ); b < bEnd; b++, books++ )
+        {
+            long bookStart = System.nanoTime();
+            int book = csr.neighbour( b );
+            for ( long u = csr.offset( book ), uEnd = csr.offset( book + 1 ); u < uEnd; u++ )
+            {
+                if ( csr.neighbour( u ) != start )
+                {
+                    count++;
+                }
+            }
+            bookLatency.record( System.nanoTime() - bookStart );
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println( "Counted " + count + " users in " + ( time / 1000.0 ) + " seconds." );
+        long total = count + books;
+        System.out.println( "Traversed " + total + " relationships in " + ( time / 1000.0 )
+                            + " seconds.\nThat is " + ( ( (double) total ) / ( (double) time ) )
+                            + " relationships per millisecond." );
+        System.out.printf( "Adjacency file size is %.3f bytes per relationship.%n",
+                ( (double) csr.size() ) / ( csr.neighbourCount() / 2 ) );
+        System.out.println( "Book expansion latency " + bookLatency );
+        report( result( "traverse", "relationships" ).throughput(
+                ( (double) total ) / ( (double) time ), "relationships/ms" ).latency( bookLatency ) );
+    }
+}
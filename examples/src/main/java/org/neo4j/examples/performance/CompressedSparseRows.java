@@ -0,0 +1,200 @@
+package org.neo4j.examples.performance;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An adjacency file in compressed sparse row format, read through memory
+ * mapped buffers.
+ * <p>
+ * The file starts with a header of three longs: a magic number, the number of
+ * nodes and the number of neighbour entries. It is followed by the offsets
+ * array, one long per node plus one, where the neighbours of node {@code n}
+ * are the entries from {@code offset(n)} up to {@code offset(n + 1)}. Last
+ * comes the neighbour array, one int node id per entry.
+ */
+public final class CompressedSparseRows
+{
+    private static final long MAGIC = 0x4e656f4353520001L;
+    private static final int HEADER_SIZE = 24;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = ( 1L << SEGMENT_BITS ) - 1;
+
+    private final ByteBuffer[] segments;
+    private final long nodeCount;
+    private final long neighbourCount;
+    private final long neighbourStart;
+    private final long size;
+
+    private CompressedSparseRows( ByteBuffer[] segments, long nodeCount, long neighbourCount,
+            long size )
+    {
+        this.segments = segments;
+        this.nodeCount = nodeCount;
+        this.neighbourCount = neighbourCount;
+        this.neighbourStart = HEADER_SIZE + 8 * ( nodeCount + 1 );
+        this.size = size;
+    }
+
+    public static CompressedSparseRows open( File file ) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            /* A single mapped buffer can not be larger than 2GB, so map the
+             * file in 1GB segments. Since both arrays are aligned to the size
+             * of their elements no element straddles two segments.
+             */
+            ByteBuffer[] segments = new ByteBuffer[(int) ( ( size + SEGMENT_MASK ) >>> SEGMENT_BITS )];
+            for ( int i = 0; i < segments.length; i++ )
+            {
+                long position = ( (long) i ) << SEGMENT_BITS;
+                segments[i] = channel.map( FileChannel.MapMode.READ_ONLY, position,
+                        Math.min( SEGMENT_MASK + 1, size - position ) );
+            }
+            if ( size < HEADER_SIZE || segments[0].getLong( 0 ) != MAGIC )
+            {
+                throw new IOException( file + " is not a compressed sparse row file" );
+            }
+            return new CompressedSparseRows( segments, segments[0].getLong( 8 ),
+                    segments[0].getLong( 16 ), size );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    public long nodeCount()
+    {
+        return nodeCount;
+    }
+
+    public long neighbourCount()
+    {
+        return neighbourCount;
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the index of the first neighbour of the node.
+     */
+    public long offset( long node )
+    {
+        long position = HEADER_SIZE + 8 * node;
+        return segments[(int) ( position >>> SEGMENT_BITS )].getLong( (int) ( position & SEGMENT_MASK ) );
+    }
+
+    public int neighbour( long index )
+    {
+        long position = neighbourStart + 4 * index;
+        return segments[(int) ( position >>> SEGMENT_BITS )].getInt( (int) ( position & SEGMENT_MASK ) );
+    }
+
+    /**
+     * Writes a compressed sparse row file from nodes visited in ascending id
+     * order. The offsets and the neighbours are streamed to two temporary
+     * files, which are joined behind the header on {@link #close()}, so
+     * writing does not need memory proportional to the size of the graph.
+     */
+    public static final class Writer
+    {
+        private final File file;
+        private final File offsetsFile;
+        private final File neighboursFile;
+        private final DataOutputStream offsets;
+        private final DataOutputStream neighbours;
+        private long nodeCount;
+        private long neighbourCount;
+
+        public Writer( File file ) throws IOException
+        {
+            this.file = file;
+            this.offsetsFile = new File( file.getPath() + ".offsets" );
+            this.neighboursFile = new File( file.getPath() + ".neighbours" );
+            this.offsets = new DataOutputStream( new BufferedOutputStream(
+                    new FileOutputStream( offsetsFile ), 1 << 16 ) );
+            this.neighbours = new DataOutputStream( new BufferedOutputStream(
+                    new FileOutputStream( neighboursFile ), 1 << 16 ) );
+            offsets.writeLong( 0 );
+        }
+
+        public long nodeCount()
+        {
+            return nodeCount;
+        }
+
+        public void addNeighbour( long node ) throws IOException
+        {
+            if ( node > Integer.MAX_VALUE )
+            {
+                throw new IllegalArgumentException( "Node id " + node
+                                                    + " does not fit in a neighbour entry" );
+            }
+            neighbours.writeInt( (int) node );
+            neighbourCount++;
+        }
+
+        /**
+         * End the neighbours of the current node and move on to the next.
+         */
+        public void endNode() throws IOException
+        {
+            offsets.writeLong( neighbourCount );
+            nodeCount++;
+        }
+
+        public void close() throws IOException
+        {
+            offsets.close();
+            neighbours.close();
+            FileChannel target = new FileOutputStream( file ).getChannel();
+            try
+            {
+                ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+                header.putLong( MAGIC ).putLong( nodeCount ).putLong( neighbourCount ).flip();
+                while ( header.hasRemaining() )
+                {
+                    target.write( header );
+                }
+                append( target, offsetsFile );
+                append( target, neighboursFile );
+            }
+            finally
+            {
+                target.close();
+            }
+        }
+
+        private static void append( FileChannel target, File source ) throws IOException
+        {
+            FileChannel channel = new FileInputStream( source ).getChannel();
+            try
+            {
+                long position = 0, size = channel.size();
+                while ( position < size )
+                {
+                    position += channel.transferTo( position, size - position, target );
+                }
+            }
+            finally
+            {
+                channel.close();
+            }
+            source.delete();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches for the Neo4j configuration that gives a workload the highest
+ * throughput within a heap and RAM budget, running every candidate in a
+ * fresh JVM with a {@link CellRunner} the way {@link BenchmarkMatrix} does.
+ * <p>
+ * The memory left for mapping the store is the RAM budget minus the heap and
+ * a reserve for the operating system. Candidates split it between the
+ * relationship store and the node store by the {@code relationshipShares},
+ * never mapping more of a store than the size of its file in
+ * {@code storeDir}, and are combined with every {@code cacheTypes} and
+ * {@code oldCache} value. The store has to exist, create it first.
+ */
+public class ConfigurationTuner extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( ConfigurationTuner.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void tune() throws IOException
+    {
+        new ConfigurationTuner().search( true );
+    }
+
+    @MainMethod.Entry
+    public static void list() throws IOException
+    {
+        new ConfigurationTuner().search( false );
+    }
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final String example;
+    private final String entry;
+    private final List<String> arguments;
+    private final String heap;
+    private final long ram;
+    private final long reserve;
+    private final String storeDir;
+    private final List<String> relationshipShares;
+    private final List<String> cacheTypes;
+    private final List<String> oldCache;
+    private final File output;
+    private final File results;
+    private final CellRunner runner;
+
+    private ConfigurationTuner()
+    {
+        super( null );
+        this.example = stringProperty( "example", "UsersAndBooks" );
+        this.entry = stringProperty( "entry", "traverse" );
+        this.arguments = BenchmarkMatrix.split( stringProperty( "arguments", "" ), " " );
+        this.heap = stringProperty( "heap", "1024m" );
+        this.ram = size( stringProperty( "ram", "4096m" ) );
+        this.reserve = size( stringProperty( "reserve", "512m" ) );
+        this.storeDir = stringProperty( "storeDir", "target/neo4j-db/" + example );
+        this.relationshipShares = BenchmarkMatrix.split( stringProperty( "relationshipShares",
+                "0.5,0.7,0.85,0.95" ), "," );
+        this.cacheTypes = BenchmarkMatrix.split( stringProperty( "cacheTypes", "soft,weak,strong" ),
+                "," );
+        this.oldCache = BenchmarkMatrix.split( stringProperty( "oldCache", "false,true" ), "," );
+        this.output = new File( stringProperty( "output", "target/tune" ) );
+        this.results = new File( stringProperty( "results", new File( output, "results.json" ).getPath() ) );
+        this.runner = new CellRunner( stringProperty( "java", CellRunner.currentJava() ),
+                BenchmarkMatrix.split( stringProperty( "jvmOptions", "-server" ), " " ), output,
+                intProperty( "retries", 0 ) );
+    }
+
+    /**
+     * @return the number of bytes in a size such as {@code 512m} or
+     *         {@code 4g}.
+     */
+    private static long size( String value )
+    {
+        String number = value.trim().toLowerCase();
+        long unit = 1;
+        switch ( number.charAt( number.length() - 1 ) )
+        {
+        case 'g':
+            unit *= 1024; // fall through
+        case 'm':
+            unit *= 1024; // fall through
+        case 'k':
+            unit *= 1024;
+            number = number.substring( 0, number.length() - 1 );
+        }
+        return Long.parseLong( number ) * unit;
+    }
+
+    private List<Map<String, String>> candidates()
+    {
+        long mapped = ram - size( heap ) - reserve;
+        if ( mapped <= 0 )
+        {
+            throw new IllegalArgumentException( "No memory left to map with ram=" + ram / MEGABYTE
+                                                + "M, heap=" + heap + " and reserve="
+                                                + reserve / MEGABYTE + "M" );
+        }
+        long nodeStore = new File( storeDir, "neostore.nodestore.db" ).length();
+        long relationshipStore = new File( storeDir, "neostore.relationshipstore.db" ).length();
+        if ( nodeStore == 0 || relationshipStore == 0 )
+        {
+            throw new IllegalArgumentException( "No store in " + storeDir + ", create it first" );
+        }
+        System.out.printf( "Mapping up to %sM of a %sM node store and a %sM relationship store%n",
+                mapped / MEGABYTE, megabytes( nodeStore ), megabytes( relationshipStore ) );
+
+        List<String> splits = new ArrayList<String>();
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        for ( String share : relationshipShares )
+        {
+            long relationships = (long) ( mapped * Double.parseDouble( share ) / MEGABYTE );
+            relationships = Math.min( megabytes( relationshipStore ), relationships );
+            long nodes = Math.min( megabytes( nodeStore ), mapped / MEGABYTE - relationships );
+            String split = nodes + "M/" + relationships + "M";
+            if ( splits.contains( split ) )
+            {
+                continue; // capped by the store sizes to the same split as before
+            }
+            splits.add( split );
+            for ( String cacheType : cacheTypes )
+            {
+                for ( String old : oldCache )
+                {
+                    Map<String, String> config = new LinkedHashMap<String, String>();
+                    config.put( "neostore.nodestore.db.mapped_memory", nodes + "M" );
+                    config.put( "neostore.relationshipstore.db.mapped_memory", relationships + "M" );
+                    config.put( "neostore.propertystore.db.mapped_memory", "0M" );
+                    config.put( "neostore.propertystore.db.strings.mapped_memory", "0M" );
+                    config.put( "neostore.propertystore.db.arrays.mapped_memory", "0M" );
+                    config.put( "cache_type", cacheType );
+                    config.put( "use_old_cache", old );
+                    result.add( config );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the size in whole megabytes, rounded up so the file fits.
+     */
+    private static long megabytes( long bytes )
+    {
+        return ( bytes + MEGABYTE - 1 ) / MEGABYTE;
+    }
+
+    private static String name( Map<String, String> config )
+    {
+        return "node=" + config.get( "neostore.nodestore.db.mapped_memory" ) + "-relationship="
+               + config.get( "neostore.relationshipstore.db.mapped_memory" ) + "-cache="
+               + config.get( "cache_type" ) + "-old=" + config.get( "use_old_cache" );
+    }
+
+    private void search( boolean execute ) throws IOException
+    {
+        List<Map<String, String>> candidates = candidates();
+        if ( !execute )
+        {
+            for ( Map<String, String> config : candidates )
+            {
+                System.out.println( name( config ) );
+            }
+            return;
+        }
+        output.mkdirs();
+        double[] throughput = new double[candidates.size()];
+        String unit = "";
+        int best = -1;
+        for ( int i = 0; i < candidates.size(); i++ )
+        {
+            String cell = name( candidates.get( i ) );
+            List<ResultRecord> records = runner.run( cell, Arrays.asList( "-Xmx" + heap, "-D"
+                    + example + ".storeDir=" + storeDir ), candidates.get( i ), example, entry,
+                    arguments, null );
+            throughput[i] = Double.NaN;
+            if ( records != null )
+            {
+                for ( ResultRecord record : records )
+                {
+                    record.appendTo( results );
+                    if ( entry.equals( record.get( "entry" ) ) )
+                    {
+                        double value = record.getDouble( "throughput" );
+                        throughput[i] = Double.isNaN( throughput[i] ) ? value : Math.max(
+                                throughput[i], value );
+                        unit = record.get( "unit" );
+                    }
+                }
+            }
+            System.out.printf( "%s: %.3f %s%n", cell, throughput[i], unit );
+            if ( !Double.isNaN( throughput[i] ) && ( best < 0 || throughput[i] > throughput[best] ) )
+            {
+                best = i;
+            }
+        }
+
+        System.out.println( "candidate\tthroughput" );
+        for ( int i = 0; i < candidates.size(); i++ )
+        {
+            System.out.printf( "%s\t%.3f%s%n", name( candidates.get( i ) ), throughput[i],
+                    i == best ? "\tbest" : "" );
+        }
+        if ( best < 0 )
+        {
+            System.out.println( "No candidate produced results, see the logs in " + output );
+            return;
+        }
+        File configuration = runner.writeConfiguration( "best", candidates.get( best ) );
+        System.out.printf( "Best configuration, %.3f %s, written to %s:%n", throughput[best], unit,
+                configuration );
+        for ( Map.Entry<String, String> setting : candidates.get( best ).entrySet() )
+        {
+            System.out.println( setting.getKey() + "=" + setting.getValue() );
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+public abstract class ConfiguredExample
+{
+    @Target( ElementType.TYPE )
+    @Retention( RetentionPolicy.RUNTIME )
+    public @interface StringRepresentation
+    {
+        IntrospectionAttribute[] value() default {};
+    }
+
+    public enum IntrospectionAttribute
+    {
+        GARBAGE_COLLECTORS( null )
+        {
+            @Override
+            String value()
+            {
+                List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+                String[] names = new String[collectors.size()];
+                int i = 0;
+                for ( GarbageCollectorMXBean gc : collectors )
+                {
+                    names[i++] = gc.getName();
+                }
+                return Arrays.toString( names );
+            }
+        },
+        GC_COUNT( "" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                long count = 0;
+                for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+                {
+                    count += Math.max( 0, gc.getCollectionCount() );
+                }
+                counters.put( name(), count );
+            }
+        },
+        GC_TIME( "ms" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                long time = 0;
+                for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+                {
+                    time += Math.max( 0, gc.getCollectionTime() );
+                }
+                counters.put( name(), time );
+            }
+        },
+        JIT_TIME( "ms" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+                if ( jit != null && jit.isCompilationTimeMonitoringSupported() )
+                {
+                    counters.put( name(), jit.getTotalCompilationTime() );
+                }
+            }
+        },
+        HEAP_POOLS( "B" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+                {
+                    if ( pool.getType() == MemoryType.HEAP )
+                    {
+                        counters.put( name() + "." + pool.getName(), pool.getUsage().getUsed() );
+                    }
+                }
+            }
+        },
+        /**
+         * The bytes allocated by the thread taking the sample, so deltas only
+         * cover work done on that thread, and are left out for runs on
+         * worker threads.
+         */
+        THREAD_ALLOCATED_BYTES( "B" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                if ( threads instanceof com.sun.management.ThreadMXBean )
+                {
+                    com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                    if ( hotspot.isThreadAllocatedMemorySupported()
+                         && hotspot.isThreadAllocatedMemoryEnabled() )
+                    {
+                        counters.put( name(),
+                                hotspot.getThreadAllocatedBytes( Thread.currentThread().getId() ) );
+                    }
+                }
+            }
+        },
+        /**
+         * The bytes the process caused to be read from storage, including the
+         * page faults on the mapped store files, from {@code /proc/self/io}.
+         * Only on Linux.
+         */
+        READ_BYTES( "B" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                Long bytes = procIo().get( "read_bytes" );
+                if ( bytes != null )
+                {
+                    counters.put( name(), bytes );
+                }
+            }
+        },
+        /**
+         * The read system calls of the process, from {@code /proc/self/io}.
+         * Only on Linux.
+         */
+        READ_CALLS( "" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                Long calls = procIo().get( "syscr" );
+                if ( calls != null )
+                {
+                    counters.put( name(), calls );
+                }
+            }
+        },
+        /**
+         * The minor and major page faults of the process, from
+         * {@code /proc/self/stat}. A major fault had to wait for the page to
+         * be read from storage. Only on Linux.
+         */
+        PAGE_FAULTS( "" )
+        {
+            @Override
+            void sample( Map<String, Long> counters )
+            {
+                String stat = readProc( "/proc/self/stat" );
+                if ( stat == null )
+                {
+                    return;
+                }
+                // the fields after the parenthesized command, starting at the state
+                String[] fields = stat.substring( stat.lastIndexOf( ')' ) + 2 ).split( " " );
+                counters.put( name() + ".minor", Long.parseLong( fields[7] ) );
+                counters.put( name() + ".major", Long.parseLong( fields[9] ) );
+            }
+        };
+
+        private final String unit;
+
+        private IntrospectionAttribute( String unit )
+        {
+            this.unit = unit;
+        }
+
+        @Override
+        public final String toString()
+        {
+            return name() + ":" + value();
+        }
+
+        String value()
+        {
+            Map<String, Long> counters = new TreeMap<String, Long>();
+            sample( counters );
+            StringBuilder result = new StringBuilder();
+            for ( Map.Entry<String, Long> counter : counters.entrySet() )
+            {
+                result.append( result.length() == 0 ? "" : "," );
+                if ( !counter.getKey().equals( name() ) )
+                {
+                    result.append( counter.getKey().substring( name().length() + 1 ) ).append( '=' );
+                }
+                result.append( counter.getValue() ).append( unit );
+            }
+            return result.toString();
+        }
+
+        /**
+         * Add the current values of the counters of this attribute, if it
+         * has any, keyed by the name of the attribute.
+         */
+        void sample( Map<String, Long> counters )
+        {
+        }
+
+        /**
+         * @return the current value of every counter of every attribute.
+         */
+        public static Map<String, Long> sampleAll()
+        {
+            Map<String, Long> counters = new TreeMap<String, Long>();
+            for ( IntrospectionAttribute attr : values() )
+            {
+                attr.sample( counters );
+            }
+            return counters;
+        }
+
+        /**
+         * @return the bytes allocated so far by the current thread, or -1 if
+         *         the JVM does not support measuring it.
+         */
+        public static long threadAllocatedBytes()
+        {
+            Map<String, Long> counters = new HashMap<String, Long>();
+            THREAD_ALLOCATED_BYTES.sample( counters );
+            Long allocated = counters.get( THREAD_ALLOCATED_BYTES.name() );
+            return allocated == null ? -1 : allocated;
+        }
+
+        private static Map<String, Long> procIo()
+        {
+            Map<String, Long> counters = new HashMap<String, Long>();
+            String io = readProc( "/proc/self/io" );
+            if ( io != null )
+            {
+                for ( String line : io.split( "\n" ) )
+                {
+                    int colon = line.indexOf( ':' );
+                    if ( colon > 0 )
+                    {
+                        counters.put( line.substring( 0, colon ), Long.parseLong( line.substring(
+                                colon + 1 ).trim() ) );
+                    }
+                }
+            }
+            return counters;
+        }
+
+        /**
+         * @return the contents of a file in {@code /proc}, or {@code null} if
+         *         it cannot be read, as on other platforms than Linux.
+         */
+        private static String readProc( String path )
+        {
+            try
+            {
+                Reader in = new FileReader( path );
+                try
+                {
+                    StringBuilder result = new StringBuilder();
+                    char[] buffer = new char[1024];
+                    for ( int read; ( read = in.read( buffer ) ) != -1; )
+                    {
+                        result.append( buffer, 0, read );
+                    }
+                    return result.toString();
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch ( IOException e )
+            {
+                return null;
+            }
+        }
+
+        static String unit( String counter )
+        {
+            int dot = counter.indexOf( '.' );
+            return valueOf( dot < 0 ? counter : counter.substring( 0, dot ) ).unit;
+        }
+    }
+
+    protected final Map<String, String> neo4jConfiguration;
+    private final Properties properties;
+    private final String prefix;
+    private final Map<String, String> settings = new TreeMap<String, String>();
+    private final File results;
+
+    protected ConfiguredExample( String neo4j_config_file )
+    {
+        this.prefix = getClass().getSimpleName();
+        String config_file = System.getProperty( "ConfiguredExample.neo4j-config-file" );
+        if ( config_file == null || config_file.trim().equals( "" ) )
+        {
+            config_file = neo4j_config_file;
+        }
+        Map<String, String> config;
+        try
+        {
+            config = EmbeddedGraphDatabase.loadConfigurations( config_file );
+        }
+        catch ( Exception e )
+        {
+            config = new HashMap<String, String>();
+        }
+        this.neo4jConfiguration = config;
+        String results_file = System.getProperty( "ConfiguredExample.results" );
+        this.results = results_file == null || results_file.trim().equals( "" ) ? null
+                : new File( results_file );
+        String filename = this.prefix + ".properties";
+        InputStream stream = null;
+        try
+        {
+            stream = new FileInputStream( filename );
+        }
+        catch ( FileNotFoundException noFile )
+        {
+            stream = getClass().getResourceAsStream( filename );
+        }
+        properties = new Properties();
+        if ( stream != null )
+        {
+            try
+            {
+                properties.load( stream );
+            }
+            catch ( Exception e )
+            {
+            }
+        }
+    }
+
+    @Override
+    public final String toString()
+    {
+        Class<? extends ConfiguredExample> cls = getClass();
+        StringRepresentation repr = cls.getAnnotation( StringRepresentation.class );
+        if ( repr == null )
+        {
+            return super.toString();
+        }
+        StringBuilder result = new StringBuilder( cls.getSimpleName() );
+        result.append( '{' );
+        for ( IntrospectionAttribute attr : repr.value() )
+        {
+            result.append( attr.toString() );
+        }
+        buildStringRepresentation( result );
+        result.append( '}' );
+        return result.toString();
+    }
+
+    protected void buildStringRepresentation( StringBuilder result )
+    {
+        // Override me!
+    }
+
+    protected String stringProperty( String key, String defaultValue )
+    {
+        String value = System.getProperty( prefix + "." + key, properties.getProperty(
+                key, defaultValue ) );
+        synchronized ( settings )
+        {
+            settings.put( key, value );
+        }
+        return value;
+    }
+
+    /**
+     * @return all properties with keys starting with the given prefix, with
+     *         the prefix removed from the keys. System properties override
+     *         the properties file, just like for single properties.
+     */
+    protected Map<String, String> propertiesWithPrefix( String keyPrefix )
+    {
+        Map<String, String> result = new TreeMap<String, String>();
+        for ( String key : properties.stringPropertyNames() )
+        {
+            if ( key.startsWith( keyPrefix ) )
+            {
+                result.put( key.substring( keyPrefix.length() ), properties.getProperty( key ) );
+            }
+        }
+        String systemPrefix = prefix + "." + keyPrefix;
+        for ( String key : System.getProperties().stringPropertyNames() )
+        {
+            if ( key.startsWith( systemPrefix ) )
+            {
+                result.put( key.substring( systemPrefix.length() ), System.getProperty( key ) );
+            }
+        }
+        synchronized ( settings )
+        {
+            for ( Map.Entry<String, String> entry : result.entrySet() )
+            {
+                settings.put( keyPrefix + entry.getKey(), entry.getValue() );
+            }
+        }
+        return result;
+    }
+
+    protected String getStoreDir()
+    {
+        return stringProperty( "storeDir", "target/neo4j-db/" + getClass().getSimpleName() );
+    }
+
+    protected int intProperty( String key, int defaultValue )
+    {
+        return Integer.parseInt( stringProperty( key,
+                Integer.toString( defaultValue ) ) );
+    }
+
+    protected long longProperty( String key, long defaultValue )
+    {
+        return Long.parseLong( stringProperty( key,
+                Long.toString( defaultValue ) ) );
+    }
+
+    protected double doubleProperty( String key, double defaultValue )
+    {
+        return Double.parseDouble( stringProperty( key,
+                Double.toString( defaultValue ) ) );
+    }
+
+    /**
+     * @return a steady state detector configured by the
+     *         {@code steadyStateWindow} and {@code steadyStateCV} properties,
+     *         or {@code null} if the {@code steadyState} property is not set.
+     */
+    protected SteadyState steadyState()
+    {
+        if ( !booleanProperty( "steadyState", false ) )
+        {
+            return null;
+        }
+        return new SteadyState( intProperty( "steadyStateWindow", 5 ), doubleProperty(
+                "steadyStateCV", 0.02 ) );
+    }
+
+    protected boolean booleanProperty( String key, boolean defaultValue )
+    {
+        return Boolean.parseBoolean( stringProperty( key,
+                Boolean.toString( defaultValue ) ) );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    protected <E extends Enum> E enumProperty( Class<E> type, String key,
+            E defaultValue )
+    {
+        return (E) Enum.valueOf( type,
+                stringProperty( key, defaultValue.name() ) );
+    }
+
+    /**
+     * Create a result record carrying the configuration of this example: the
+     * settings read so far, the Neo4j configuration, the JVM flags and the
+     * introspection attributes.
+     */
+    protected ResultRecord result( String entry, String metric )
+    {
+        ResultRecord record = new ResultRecord( prefix, entry, metric );
+        synchronized ( settings )
+        {
+            for ( Map.Entry<String, String> setting : settings.entrySet() )
+            {
+                record.set( "settings", setting.getKey(), setting.getValue() );
+            }
+        }
+        for ( Map.Entry<String, String> config : new TreeMap<String, String>( neo4jConfiguration ).entrySet() )
+        {
+            record.set( "config", config.getKey(), config.getValue() );
+        }
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        record.set( "jvm", "name", runtime.getVmName() );
+        record.set( "jvm", "version", runtime.getVmVersion() );
+        StringBuilder flags = new StringBuilder();
+        for ( String flag : runtime.getInputArguments() )
+        {
+            flags.append( flags.length() == 0 ? "" : " " ).append( flag );
+        }
+        record.set( "jvm", "flags", flags );
+        for ( IntrospectionAttribute attr : IntrospectionAttribute.values() )
+        {
+            record.set( "attributes", attr.name(), attr.value() );
+        }
+        return record;
+    }
+
+    /**
+     * Print how the introspection counters changed since the
+     * {@link IntrospectionAttribute#sampleAll() sample} taken before a run,
+     * and add the changes to the record of the run.
+     */
+    protected ResultRecord introspectionDeltas( ResultRecord record, Map<String, Long> before )
+    {
+        return introspectionDeltas( record, before, false );
+    }
+
+    /**
+     * @param workerThreads whether the run did its work on other threads than
+     *        the one calling this, whose allocations the
+     *        {@link IntrospectionAttribute#THREAD_ALLOCATED_BYTES} of this
+     *        thread do not count, so it is left out.
+     */
+    protected ResultRecord introspectionDeltas( ResultRecord record, Map<String, Long> before,
+            boolean workerThreads )
+    {
+        Map<String, Long> after = IntrospectionAttribute.sampleAll();
+        StringBuilder deltas = new StringBuilder( "Introspection deltas:" );
+        for ( Map.Entry<String, Long> counter : after.entrySet() )
+        {
+            Long previous = before.get( counter.getKey() );
+            if ( workerThreads
+                 && counter.getKey().equals( IntrospectionAttribute.THREAD_ALLOCATED_BYTES.name() ) )
+            {
+                continue;
+            }
+            if ( previous != null )
+            {
+                long delta = counter.getValue() - previous;
+                record.set( "deltas", counter.getKey(), delta );
+                String unit = IntrospectionAttribute.unit( counter.getKey() );
+                deltas.append( ' ' ).append( counter.getKey() ).append( '=' );
+                if ( unit.equals( "B" ) )
+                {
+                    deltas.append( String.format( "%+.3fMB", delta / 1048576.0 ) );
+                }
+                else
+                {
+                    deltas.append( String.format( "%+d", delta ) ).append( unit );
+                }
+            }
+        }
+        System.out.println( deltas );
+        return record;
+    }
+
+    /**
+     * Print the page faults per thousand relationships and the bytes read
+     * from storage per relationship during a run, and add them to the metrics
+     * of the record. Call after {@link #introspectionDeltas(ResultRecord, Map)},
+     * which takes the deltas of the counters. They show whether a slow run
+     * was waiting for faults on the mapped store files rather than using the
+     * CPU. The counters cover the whole process and are only available on
+     * Linux, elsewhere the record is left as it is.
+     */
+    protected ResultRecord ioPerRelationship( ResultRecord record, long relationships )
+    {
+        if ( relationships <= 0 )
+        {
+            return record;
+        }
+        StringBuilder io = new StringBuilder();
+        String faults = "deltas." + IntrospectionAttribute.PAGE_FAULTS.name();
+        double minor = record.getDouble( faults + ".minor" );
+        double major = record.getDouble( faults + ".major" );
+        if ( !Double.isNaN( minor ) && !Double.isNaN( major ) )
+        {
+            minor = minor * 1000 / relationships;
+            major = major * 1000 / relationships;
+            io.append( String.format( "%.3f minor and %.3f major page faults per 1k relationships",
+                    minor, major ) );
+            record.set( "metrics", "minorFaultsPer1kRelationships", minor );
+            record.set( "metrics", "majorFaultsPer1kRelationships", major );
+        }
+        double bytes = record.getDouble( "deltas." + IntrospectionAttribute.READ_BYTES.name() );
+        double calls = record.getDouble( "deltas." + IntrospectionAttribute.READ_CALLS.name() );
+        if ( !Double.isNaN( bytes ) && !Double.isNaN( calls ) )
+        {
+            bytes = bytes / relationships;
+            calls = calls * 1000 / relationships;
+            io.append( io.length() == 0 ? "" : ", " ).append( String.format(
+                    "%.3f bytes read per relationship and %.3f read calls per 1k relationships",
+                    bytes, calls ) );
+            record.set( "metrics", "readBytesPerRelationship", bytes );
+            record.set( "metrics", "readCallsPer1kRelationships", calls );
+        }
+        if ( io.length() > 0 )
+        {
+            System.out.println( io.append( '.' ) );
+        }
+        return record;
+    }
+
+    /**
+     * Append the record to the results file, if one is configured through the
+     * {@code ConfiguredExample.results} system property.
+     */
+    protected void report( ResultRecord record )
+    {
+        if ( results == null )
+        {
+            return;
+        }
+        synchronized ( ConfiguredExample.class )
+        {
+            try
+            {
+                record.appendTo( results );
+            }
+            catch ( IOException e )
+            {
+                System.err.println( "Could not write result to " + results + ": " + e );
+            }
+        }
+    }
+
+    /**
+     * @return a progress reporter for a loop over {@code total} items, already
+     *         printing unless the {@code renderProgression} property is false.
+     */
+    protected ProgressReporter progress( String what, long total )
+    {
+        ProgressReporter progress = new ProgressReporter( what, total, intProperty(
+                "progressInterval", 1000 ) );
+        return booleanProperty( "renderProgression", true ) ? progress.start() : progress;
+    }
+}
@@ -0,0 +1,212 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * The position of a dataset build, kept in a properties file in the store
+ * directory. A generator saves it whenever the store is in a consistent
+ * state, so that an interrupted build can be resumed from there, and a
+ * finished build can be extended with more data later.
+ * <p>
+ * The file is written to a temporary file first and then renamed, so a crash
+ * while saving leaves the previous checkpoint in place. A crash can still
+ * leave records written after the checkpoint in the store, so the high ids
+ * of the node and relationship stores are saved with it, and a resumed
+ * build refuses to continue on a store with records in use past them.
+ */
+public final class DatasetCheckpoint
+{
+    private static final String FILENAME = "dataset.checkpoint";
+    private static final String NODE_STORE = "neostore.nodestore.db";
+    private static final String RELATIONSHIP_STORE = "neostore.relationshipstore.db";
+
+    private final File file;
+    private final Properties properties = new Properties();
+
+    private DatasetCheckpoint( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return a new, empty checkpoint for the store, not yet saved.
+     */
+    public static DatasetCheckpoint create( String storeDir )
+    {
+        return new DatasetCheckpoint( new File( storeDir, FILENAME ) );
+    }
+
+    /**
+     * @throws IllegalStateException if there is a store or a checkpoint in
+     *             the directory already, which a new build would write over.
+     */
+    public static void requireEmpty( String storeDir )
+    {
+        if ( new File( storeDir, "neostore" ).exists() || new File( storeDir, FILENAME ).exists() )
+        {
+            throw new IllegalStateException( "There is already a store in " + storeDir
+                                             + ", resume or extend it, or remove it first" );
+        }
+    }
+
+    /**
+     * @return the last saved checkpoint of the store.
+     * @throws IOException if there is no checkpoint or it cannot be read.
+     */
+    public static DatasetCheckpoint load( String storeDir ) throws IOException
+    {
+        DatasetCheckpoint checkpoint = create( storeDir );
+        if ( !checkpoint.file.exists() )
+        {
+            throw new IOException( "No dataset checkpoint in " + storeDir );
+        }
+        InputStream in = new FileInputStream( checkpoint.file );
+        try
+        {
+            checkpoint.properties.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return a new checkpoint for another store with the same position, not
+     *         yet saved.
+     */
+    public DatasetCheckpoint copy( String storeDir )
+    {
+        DatasetCheckpoint copy = create( storeDir );
+        copy.properties.putAll( properties );
+        return copy;
+    }
+
+    public String get( String key )
+    {
+        String value = properties.getProperty( key );
+        if ( value == null )
+        {
+            throw new IllegalStateException( "Dataset checkpoint " + file + " has no " + key );
+        }
+        return value;
+    }
+
+    public String get( String key, String defaultValue )
+    {
+        return properties.getProperty( key, defaultValue );
+    }
+
+    public long getLong( String key )
+    {
+        return Long.parseLong( get( key ) );
+    }
+
+    public int getInt( String key )
+    {
+        return Integer.parseInt( get( key ) );
+    }
+
+    public DatasetCheckpoint set( String key, Object value )
+    {
+        properties.setProperty( key, String.valueOf( value ) );
+        return this;
+    }
+
+    /**
+     * Record the high ids of the node and relationship stores, which must
+     * have been shut down since the last record was written.
+     */
+    public DatasetCheckpoint setHighIds() throws IOException
+    {
+        return set( "highId.nodes", highId( NODE_STORE, StoreRecords.NODE_RECORD_SIZE ) ).set(
+                "highId.relationships",
+                highId( RELATIONSHIP_STORE, StoreRecords.RELATIONSHIP_RECORD_SIZE ) );
+    }
+
+    /**
+     * @throws IllegalStateException if the store has records in use past the
+     *             high ids of this checkpoint, which continuing the build
+     *             would insert a second time.
+     */
+    public void verifyHighIds() throws IOException
+    {
+        verifyHighId( NODE_STORE, StoreRecords.NODE_RECORD_SIZE, "highId.nodes" );
+        verifyHighId( RELATIONSHIP_STORE, StoreRecords.RELATIONSHIP_RECORD_SIZE,
+                "highId.relationships" );
+    }
+
+    /**
+     * @return one past the last record in use, found from the end of the
+     *         file, which is where the batch inserter adds records.
+     */
+    private long highId( String store, int recordSize ) throws IOException
+    {
+        File storeFile = new File( file.getParentFile(), store );
+        if ( !storeFile.exists() )
+        {
+            return 0;
+        }
+        StoreRecords records = StoreRecords.open( storeFile, recordSize );
+        long id = records.records();
+        while ( id > 0 && !records.inUse( id - 1 ) )
+        {
+            id--;
+        }
+        return id;
+    }
+
+    private void verifyHighId( String store, int recordSize, String key ) throws IOException
+    {
+        long highId = Long.parseLong( get( key, "-1" ) );
+        File storeFile = new File( file.getParentFile(), store );
+        if ( highId < 0 || !storeFile.exists() )
+        {
+            return;
+        }
+        StoreRecords records = StoreRecords.open( storeFile, recordSize );
+        for ( long id = highId; id < records.records(); id++ )
+        {
+            if ( records.inUse( id ) )
+            {
+                throw new IllegalStateException( storeFile + " has record " + id
+                                                 + " in use past the high id " + highId
+                                                 + " of the checkpoint, it was written after the "
+                                                 + "checkpoint and would be inserted twice. "
+                                                 + "Create the store again." );
+            }
+        }
+    }
+
+    public void save() throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File temp = new File( file.getPath() + ".tmp" );
+        OutputStream out = new FileOutputStream( temp );
+        try
+        {
+            properties.store( out, "Dataset build checkpoint" );
+        }
+        finally
+        {
+            out.close();
+        }
+        if ( !temp.renameTo( file ) && !( file.delete() && temp.renameTo( file ) ) )
+        {
+            throw new IOException( "Could not replace " + file );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return file.getPath();
+    }
+}
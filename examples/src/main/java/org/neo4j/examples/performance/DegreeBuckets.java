@@ -0,0 +1,121 @@
+package org.neo4j.examples.performance;
+
+/**
+ * Expansion latency and throughput broken down by the degree of the expanded
+ * node, in decades: 1-9, 10-99, 100-999 and so on. With a skewed degree
+ * distribution the few dense nodes can hold most of the relationships, and
+ * their cost per relationship is hidden in an overall average.
+ * <p>
+ * Instances are not thread safe, give each thread its own and
+ * {@link #add(DegreeBuckets) merge} them when done.
+ */
+public final class DegreeBuckets
+{
+    private static final int BUCKETS = 19; // decades of a positive long
+
+    private final LatencyHistogram all = new LatencyHistogram();
+    private final LatencyHistogram[] latency = new LatencyHistogram[BUCKETS];
+    private final long[] nodes = new long[BUCKETS];
+    private final long[] relationships = new long[BUCKETS];
+    private final long[] nanos = new long[BUCKETS];
+
+    public void record( long degree, long elapsed )
+    {
+        all.record( elapsed );
+        int bucket = bucket( degree );
+        if ( latency[bucket] == null )
+        {
+            latency[bucket] = new LatencyHistogram();
+        }
+        latency[bucket].record( elapsed );
+        nodes[bucket]++;
+        relationships[bucket] += degree;
+        nanos[bucket] += elapsed;
+    }
+
+    public void add( DegreeBuckets other )
+    {
+        all.add( other.all );
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( other.latency[i] != null )
+            {
+                if ( latency[i] == null )
+                {
+                    latency[i] = new LatencyHistogram();
+                }
+                latency[i].add( other.latency[i] );
+            }
+            nodes[i] += other.nodes[i];
+            relationships[i] += other.relationships[i];
+            nanos[i] += other.nanos[i];
+        }
+    }
+
+    /**
+     * @return the latency of all expansions, regardless of degree.
+     */
+    public LatencyHistogram all()
+    {
+        return all;
+    }
+
+    public void print()
+    {
+        System.out.println( "degree\tnodes\trelationships\trels/ms\tlatency" );
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( nodes[i] > 0 )
+            {
+                System.out.printf( "%s\t%s\t%s\t%.3f\t%s%n", range( i ), nodes[i], relationships[i],
+                        speed( i ), latency[i] );
+            }
+        }
+    }
+
+    /**
+     * Add the buckets to the {@code metrics} group of the record, as
+     * {@code degree.<range>.<metric>}.
+     */
+    public ResultRecord reportTo( ResultRecord record )
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( nodes[i] > 0 )
+            {
+                String prefix = "degree." + range( i ) + ".";
+                record.set( "metrics", prefix + "nodes", nodes[i] );
+                record.set( "metrics", prefix + "relationships", relationships[i] );
+                record.set( "metrics", prefix + "relationshipsPerMs", speed( i ) );
+                record.set( "metrics", prefix + "p50", latency[i].percentile( 50 ) );
+                record.set( "metrics", prefix + "p99", latency[i].percentile( 99 ) );
+            }
+        }
+        return record;
+    }
+
+    private double speed( int bucket )
+    {
+        return relationships[bucket] / Math.max( 1e-6, nanos[bucket] / 1000000.0 );
+    }
+
+    private static int bucket( long degree )
+    {
+        int bucket = 0;
+        for ( long limit = 10; degree >= limit && bucket < BUCKETS - 1; limit *= 10 )
+        {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String range( int bucket )
+    {
+        long low = 1;
+        for ( int i = 0; i < bucket; i++ )
+        {
+            low *= 10;
+        }
+        return bucket == 0 ? "1-9" : bucket == BUCKETS - 1 ? low + "-" : low + "-" + ( low * 10 - 1 );
+    }
+}
@@ -0,0 +1,343 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+
+/**
+ * Imports a dump of favorites, one user and one book per record, into a new
+ * store with the same shape as the one {@link UsersAndBooks} creates: a node
+ * per distinct user and book, a {@code FAVORITE} relationship per record and
+ * one from the reference node to every book, so that the {@code traverse}
+ * and {@code scale} entries of {@code UsersAndBooks} run on it. The nodes get
+ * ids in the order the users and books are first seen, not the ranges the
+ * generated dataset has, so the entries that compute node ids from the
+ * dataset parameters, such as {@code recommend}, {@code mixed},
+ * {@code crash} and {@code load}, do not work on an imported store. The
+ * store directory must not contain a store yet.
+ * <p>
+ * The {@code CSV} format has a record per line, a user id and a book id
+ * separated by a comma, tab or space, with any further fields ignored. Lines
+ * not starting with an id, such as a header, are skipped. The
+ * {@code BINARY} format has a record per 16 bytes, two big endian longs. The
+ * format is {@code BINARY} for files ending in {@code .bin} and
+ * {@code CSV} for all others, unless {@code format} is given.
+ * <p>
+ * The file is read in chunks of {@code chunkSize} bytes, which
+ * {@code parserThreads} threads parse straight from the bytes into a
+ * {@link BatchPipeline}, and the calling thread inserts them in file order.
+ * Ids are mapped to node ids with a {@link LongLongMap} per kind of node.
+ */
+public class EdgeListImport extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( EdgeListImport.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void load() throws IOException
+    {
+        new EdgeListImport().importFile();
+    }
+
+    private enum Format
+    {
+        CSV,
+        BINARY,
+    }
+
+    /**
+     * The longest line a CSV chunk reads past its end to finish.
+     */
+    private static final int MAX_LINE = 256;
+    private static final int BINARY_RECORD = 16;
+    /**
+     * The shortest possible CSV line, {@code "1,2\n"}.
+     */
+    private static final int MIN_LINE = 4;
+
+    private final RelationshipType FAVORITE = DynamicRelationshipType.withName( "FAVORITE" );
+    private final File file;
+    private final Format format;
+    private final int chunkSize;
+    private final int parserThreads;
+    private final int pipelineCapacity;
+    private final int expectedUsers;
+    private final int expectedBooks;
+    private final boolean keepIds;
+
+    private final AtomicLong skipped = new AtomicLong();
+    private LongLongMap users;
+    private LongLongMap books;
+    private long reference;
+
+    private EdgeListImport()
+    {
+        super( "create.properties" );
+        this.file = new File( stringProperty( "file", "favorites.csv" ) );
+        this.format = enumProperty( Format.class, "format",
+                file.getName().endsWith( ".bin" ) ? Format.BINARY : Format.CSV );
+        int chunk = intProperty( "chunkSize", 1024 * 1024 );
+        this.chunkSize = format == Format.BINARY ? chunk - chunk % BINARY_RECORD : chunk;
+        this.parserThreads = intProperty( "parserThreads", Runtime.getRuntime().availableProcessors() );
+        this.pipelineCapacity = intProperty( "pipelineCapacity", 16 );
+        this.expectedUsers = intProperty( "expectedUsers", 1024 * 1024 );
+        this.expectedBooks = intProperty( "expectedBooks", 64 * 1024 );
+        this.keepIds = booleanProperty( "keepIds", false );
+    }
+
+    @Override
+    protected String getStoreDir()
+    {
+        return stringProperty( "storeDir", "target/neo4j-db/UsersAndBooks" );
+    }
+
+    private void importFile() throws IOException
+    {
+        DatasetCheckpoint.requireEmpty( getStoreDir() );
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            long chunks = ( size + chunkSize - 1 ) / chunkSize;
+            int batchRecords = format == Format.BINARY ? chunkSize / BINARY_RECORD : chunkSize
+                                                                                     / MIN_LINE + 1;
+            System.out.printf( "Importing %s bytes of %s from %s into %s, %s chunks on %s threads%n",
+                    size, format, file, getStoreDir(), chunks, parserThreads );
+            users = new LongLongMap( expectedUsers );
+            books = new LongLongMap( expectedBooks );
+            final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>()
+            {
+                @Override
+                protected ByteBuffer initialValue()
+                {
+                    return ByteBuffer.allocate( chunkSize + MAX_LINE + 1 );
+                }
+            };
+            BatchPipeline pipeline = new BatchPipeline( parserThreads, pipelineCapacity,
+                    batchRecords, 2 );
+            final BatchInserter batch = new BatchInserterImpl( getStoreDir(), neo4jConfiguration );
+            final ProgressReporter progress = progress( "relationships", size / ( format == Format.BINARY
+                    ? BINARY_RECORD : 2 * MIN_LINE ) );
+            long time = System.currentTimeMillis();
+            try
+            {
+                reference = batch.getReferenceNode();
+                pipeline.run( chunks, new BatchPipeline.Producer()
+                {
+                    public int produce( long sequence, long[] records )
+                    {
+                        try
+                        {
+                            return format == Format.BINARY ? parseBinary( channel, size, sequence,
+                                    records, buffers.get() ) : parseCsv( channel, size, sequence,
+                                    records, buffers.get() );
+                        }
+                        catch ( IOException e )
+                        {
+                            throw new RuntimeException( "Could not read " + file, e );
+                        }
+                    }
+                }, new BatchPipeline.Consumer()
+                {
+                    public void consume( long[] records, int count )
+                    {
+                        for ( int i = 0; i < 2 * count; i += 2 )
+                        {
+                            batch.createRelationship( user( batch, records[i] ), book( batch,
+                                    records[i + 1] ), FAVORITE, null );
+                            progress.increment();
+                        }
+                    }
+                } );
+            }
+            finally
+            {
+                progress.stop();
+                batch.shutdown();
+            }
+            time = System.currentTimeMillis() - time;
+
+            long relationships = progress.count();
+            System.out.printf( "Imported %s favorites of %s users and %s books in %.3f seconds, "
+                               + "%.3f relationships/ms, %s lines skipped.%n", relationships,
+                    users.size(), books.size(), time / 1000.0, relationships / (double) time,
+                    skipped.get() );
+            pipeline.printStatistics();
+            report( result( "load", "relationships" ).throughput( relationships / (double) time,
+                    "relationships/ms" ).set( "metrics", "users", users.size() ).set( "metrics",
+                    "books", books.size() ).set( "metrics", "bytes", size ).set( "metrics",
+                    "skippedLines", skipped.get() ).set( "metrics", "parseRecordsPerMs",
+                    pipeline.generationRate() ).set( "metrics", "insertRecordsPerMs",
+                    pipeline.writeRate() ) );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private long user( BatchInserter batch, long id )
+    {
+        long node = users.get( id );
+        if ( node == LongLongMap.NONE )
+        {
+            node = batch.createNode( properties( id ) );
+            users.put( id, node );
+        }
+        return node;
+    }
+
+    private long book( BatchInserter batch, long id )
+    {
+        long node = books.get( id );
+        if ( node == LongLongMap.NONE )
+        {
+            node = batch.createNode( properties( id ) );
+            books.put( id, node );
+            batch.createRelationship( reference, node, FAVORITE, null );
+        }
+        return node;
+    }
+
+    private Map<String, Object> properties( long id )
+    {
+        return keepIds ? Collections.<String, Object>singletonMap( "id", id ) : null;
+    }
+
+    /**
+     * Read the file from the position until the buffer is full or the file
+     * ends.
+     */
+    private static void read( FileChannel channel, ByteBuffer buffer, long position )
+            throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            int read = channel.read( buffer, position );
+            if ( read < 0 )
+            {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private int parseBinary( FileChannel channel, long size, long sequence, long[] records,
+            ByteBuffer buffer ) throws IOException
+    {
+        long start = sequence * chunkSize;
+        buffer.clear();
+        buffer.limit( (int) Math.min( chunkSize, size - start ) );
+        read( channel, buffer, start );
+        int count = 0;
+        while ( buffer.remaining() >= BINARY_RECORD )
+        {
+            records[2 * count] = buffer.getLong();
+            records[2 * count + 1] = buffer.getLong();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parse the lines starting in the chunk, reading past its end to finish
+     * the last one. The byte before the chunk is read too, to tell whether
+     * the chunk starts with a new line or in the middle of the last line of
+     * the previous chunk.
+     */
+    private int parseCsv( FileChannel channel, long size, long sequence, long[] records,
+            ByteBuffer buffer ) throws IOException
+    {
+        long start = sequence * chunkSize;
+        long end = Math.min( size, start + chunkSize );
+        long from = Math.max( 0, start - 1 );
+        buffer.clear();
+        buffer.limit( (int) Math.min( buffer.capacity(), size - from ) );
+        read( channel, buffer, from );
+        byte[] bytes = buffer.array();
+        int limit = buffer.limit();
+        int last = (int) ( end - from ); // lines starting here belong to the next chunk
+        int pos = 0;
+        if ( start > 0 )
+        {
+            while ( pos < limit && bytes[pos] != '\n' )
+            {
+                pos++;
+            }
+            pos++;
+        }
+        int count = 0;
+        long skippedLines = 0;
+        while ( pos < last )
+        {
+            int lineEnd = pos;
+            while ( lineEnd < limit && bytes[lineEnd] != '\n' )
+            {
+                lineEnd++;
+            }
+            if ( lineEnd == limit && from + limit < size )
+            {
+                throw new IllegalStateException( "Line longer than " + MAX_LINE + " bytes at byte "
+                                                 + ( from + pos ) + " of " + file );
+            }
+            if ( parseLine( bytes, pos, lineEnd, records, 2 * count ) )
+            {
+                count++;
+            }
+            else
+            {
+                skippedLines++;
+            }
+            pos = lineEnd + 1;
+        }
+        skipped.addAndGet( skippedLines );
+        return count;
+    }
+
+    /**
+     * Parse the first two fields of a line into the records.
+     *
+     * @return whether the line starts with two ids.
+     */
+    private static boolean parseLine( byte[] bytes, int pos, int end, long[] records, int offset )
+    {
+        for ( int field = 0; field < 2; field++ )
+        {
+            while ( pos < end && ( bytes[pos] == ',' || bytes[pos] == '\t' || bytes[pos] == ' ' ) )
+            {
+                pos++;
+            }
+            boolean negative = pos < end && bytes[pos] == '-';
+            if ( negative )
+            {
+                pos++;
+            }
+            int digits = pos;
+            long value = 0;
+            while ( pos < end && bytes[pos] >= '0' && bytes[pos] <= '9' )
+            {
+                value = value * 10 + ( bytes[pos++] - '0' );
+            }
+            if ( pos == digits )
+            {
+                return false;
+            }
+            records[offset + field] = negative ? -value : value;
+        }
+        return true;
+    }
+}
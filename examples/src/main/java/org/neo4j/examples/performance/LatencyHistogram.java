@@ -0,0 +1,117 @@
+package org.neo4j.examples.performance;
+
+import java.util.Arrays;
+
+/**
+ * A recording histogram of nanosecond latencies in the style of
+ * HdrHistogram. Values are kept in log-linear buckets with a precision of
+ * two significant decimal digits, so recording is a couple of shifts and an
+ * array increment regardless of the magnitude of the value, and the memory
+ * footprint is fixed.
+ * <p>
+ * Instances are not thread safe, give each thread its own histogram and
+ * {@link #add(LatencyHistogram) merge} them when done.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << ( SUB_BUCKET_BITS - 1 );
+
+    private final long[] counts = new long[( 64 - SUB_BUCKET_BITS + 2 ) * SUB_BUCKET_HALF];
+    private long count;
+    private long max;
+
+    public void record( long nanos )
+    {
+        if ( nanos < 0 )
+        {
+            nanos = 0;
+        }
+        counts[index( nanos )]++;
+        count++;
+        if ( nanos > max )
+        {
+            max = nanos;
+        }
+    }
+
+    public void add( LatencyHistogram other )
+    {
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max( max, other.max );
+    }
+
+    public void reset()
+    {
+        Arrays.fill( counts, 0 );
+        count = 0;
+        max = 0;
+    }
+
+    public long count()
+    {
+        return count;
+    }
+
+    public long max()
+    {
+        return max;
+    }
+
+    /**
+     * @param percentile the percentile to look up, between 0 and 100.
+     * @return the highest value equivalent to the value at the percentile.
+     */
+    public long percentile( double percentile )
+    {
+        if ( count == 0 )
+        {
+            return 0;
+        }
+        long target = Math.max( 1, (long) Math.ceil( count * percentile / 100.0 ) );
+        long seen = 0;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= target )
+            {
+                return Math.min( highestEquivalentValue( i ), max );
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "p50=%.3fus p99=%.3fus p99.9=%.3fus max=%.3fus (%d samples)",
+                percentile( 50 ) / 1000.0, percentile( 99 ) / 1000.0,
+                percentile( 99.9 ) / 1000.0, max / 1000.0, count );
+    }
+
+    private static int index( long value )
+    {
+        if ( value < 2 * SUB_BUCKET_HALF )
+        {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        int subBucket = (int) ( value >>> shift );
+        return ( shift + 1 ) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    private static long highestEquivalentValue( int index )
+    {
+        if ( index < 2 * SUB_BUCKET_HALF )
+        {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ( ( subBucket + 1 ) << shift ) - 1;
+    }
+}
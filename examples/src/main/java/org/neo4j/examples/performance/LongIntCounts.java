@@ -0,0 +1,189 @@
+package org.neo4j.examples.performance;
+
+import java.util.Arrays;
+
+/**
+ * Counts per {@code long} key in an open addressing hash table of primitive
+ * arrays, so that counting does not box keys or values. Meant to be reused:
+ * {@link #clear()} only touches the slots that were used since the last
+ * clear, and the table only grows.
+ */
+public final class LongIntCounts
+{
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] counts;
+    private int[] used;
+    private int size;
+
+    public LongIntCounts( int expectedSize )
+    {
+        int capacity = 16;
+        while ( capacity < expectedSize * 2 )
+        {
+            capacity *= 2;
+        }
+        allocate( capacity );
+    }
+
+    private void allocate( int capacity )
+    {
+        keys = new long[capacity];
+        Arrays.fill( keys, EMPTY );
+        counts = new int[capacity];
+        used = new int[capacity / 2];
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int get( long key )
+    {
+        int slot = slot( key );
+        return keys[slot] == key ? counts[slot] : 0;
+    }
+
+    public boolean contains( long key )
+    {
+        return keys[slot( key )] == key;
+    }
+
+    /**
+     * @return the count of the key after incrementing it.
+     */
+    public int increment( long key )
+    {
+        int slot = slot( key );
+        if ( keys[slot] != key )
+        {
+            if ( size == used.length )
+            {
+                grow();
+                slot = slot( key );
+            }
+            keys[slot] = key;
+            used[size++] = slot;
+        }
+        return ++counts[slot];
+    }
+
+    public void clear()
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            keys[used[i]] = EMPTY;
+            counts[used[i]] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * Fill in the keys with the highest counts, highest first.
+     *
+     * @return the number of keys filled in, at most the length of the arrays.
+     */
+    public int top( long[] topKeys, int[] topCounts )
+    {
+        int k = Math.min( topKeys.length, size ), filled = 0;
+        if ( k == 0 )
+        {
+            return 0;
+        }
+        // A min-heap of the best k so far, the worst of them at the root
+        for ( int i = 0; i < size; i++ )
+        {
+            long key = keys[used[i]];
+            int count = counts[used[i]];
+            if ( filled < k )
+            {
+                topKeys[filled] = key;
+                topCounts[filled] = count;
+                siftUp( topKeys, topCounts, filled++ );
+            }
+            else if ( count > topCounts[0] )
+            {
+                topKeys[0] = key;
+                topCounts[0] = count;
+                siftDown( topKeys, topCounts, 0, k );
+            }
+        }
+        // Sort the heap in place, moving the worst to the end
+        for ( int end = k - 1; end > 0; end-- )
+        {
+            swap( topKeys, topCounts, 0, end );
+            siftDown( topKeys, topCounts, 0, end );
+        }
+        return k;
+    }
+
+    private int slot( long key )
+    {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) ( hash ^ ( hash >>> 32 ) ) & mask;
+        while ( keys[slot] != EMPTY && keys[slot] != key )
+        {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts, oldUsed = used;
+        int oldSize = size;
+        allocate( keys.length * 2 );
+        for ( int i = 0; i < oldSize; i++ )
+        {
+            int slot = slot( oldKeys[oldUsed[i]] );
+            keys[slot] = oldKeys[oldUsed[i]];
+            counts[slot] = oldCounts[oldUsed[i]];
+            used[size++] = slot;
+        }
+    }
+
+    private static void siftUp( long[] keys, int[] counts, int child )
+    {
+        while ( child > 0 )
+        {
+            int parent = ( child - 1 ) / 2;
+            if ( counts[parent] <= counts[child] )
+            {
+                return;
+            }
+            swap( keys, counts, parent, child );
+            child = parent;
+        }
+    }
+
+    private static void siftDown( long[] keys, int[] counts, int parent, int size )
+    {
+        for ( int child; ( child = 2 * parent + 1 ) < size; parent = child )
+        {
+            if ( child + 1 < size && counts[child + 1] < counts[child] )
+            {
+                child++;
+            }
+            if ( counts[parent] <= counts[child] )
+            {
+                return;
+            }
+            swap( keys, counts, parent, child );
+        }
+    }
+
+    private static void swap( long[] keys, int[] counts, int a, int b )
+    {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+    }
+}
@@ -0,0 +1,108 @@
+package org.neo4j.examples.performance;
+
+import java.util.Arrays;
+
+/**
+ * A map from {@code long} keys to {@code long} values in an open addressing
+ * hash table of primitive arrays, so that mapping ids does not box keys or
+ * values. The table doubles when half full, up to {@code 2^29} keys. The key
+ * {@link Long#MIN_VALUE} marks free slots and cannot be stored.
+ */
+public final class LongLongMap
+{
+    /**
+     * Returned by {@link #get(long)} for keys not in the map.
+     */
+    public static final long NONE = -1;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongMap( int expectedSize )
+    {
+        int capacity = 16;
+        while ( capacity < expectedSize * 2L && capacity < MAX_CAPACITY )
+        {
+            capacity *= 2;
+        }
+        allocate( capacity );
+    }
+
+    private void allocate( int capacity )
+    {
+        keys = new long[capacity];
+        Arrays.fill( keys, EMPTY );
+        values = new long[capacity];
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or {@link #NONE}.
+     */
+    public long get( long key )
+    {
+        int slot = slot( key );
+        return keys[slot] == key ? values[slot] : NONE;
+    }
+
+    public void put( long key, long value )
+    {
+        if ( key == EMPTY )
+        {
+            throw new IllegalArgumentException( "Cannot store the key " + key );
+        }
+        int slot = slot( key );
+        if ( keys[slot] != key )
+        {
+            if ( size * 2 >= keys.length )
+            {
+                grow();
+                slot = slot( key );
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    private int slot( long key )
+    {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) ( hash ^ ( hash >>> 32 ) ) & mask;
+        while ( keys[slot] != EMPTY && keys[slot] != key )
+        {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+    private void grow()
+    {
+        if ( keys.length >= MAX_CAPACITY )
+        {
+            throw new IllegalStateException( "Cannot hold more than " + size + " keys" );
+        }
+        long[] oldKeys = keys, oldValues = values;
+        allocate( keys.length * 2 );
+        for ( int i = 0; i < oldKeys.length; i++ )
+        {
+            if ( oldKeys[i] != EMPTY )
+            {
+                int slot = slot( oldKeys[i] );
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                size++;
+            }
+        }
+    }
+}
@@ -125,6 +125,8 @@ public final class MainMethod
         catch ( InvocationTargetException e )
         {
             e.getCause().printStackTrace();
+            // Let scripts and forking runners see that the entry failed
+            System.exit( 1 );
         }
         catch ( IllegalArgumentException e )
         {
@@ -0,0 +1,125 @@
+package org.neo4j.examples.performance;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports progress of a long running loop from a background thread. The loop
+ * only publishes a counter, and a daemon thread samples it periodically and
+ * prints the instantaneous rate, the cumulative rate and the estimated time
+ * left. This keeps the cost in the loop down to a counter increment.
+ */
+public final class ProgressReporter
+{
+    private final String what;
+    private final long total;
+    private final long intervalMs;
+    private final AtomicLong count = new AtomicLong();
+    private volatile Thread sampler;
+    private long startTime;
+
+    public ProgressReporter( String what, long total, long intervalMs )
+    {
+        this.what = what;
+        this.total = total;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Start printing progress. A reporter that is not started still counts,
+     * but never prints anything.
+     */
+    public ProgressReporter start()
+    {
+        startTime = System.currentTimeMillis();
+        Thread thread = new Thread( "ProgressReporter-" + what )
+        {
+            @Override
+            public void run()
+            {
+                sample();
+            }
+        };
+        thread.setDaemon( true );
+        sampler = thread;
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Count one item. Only for use when a single thread does the counting.
+     */
+    public void increment()
+    {
+        count.lazySet( count.get() + 1 );
+    }
+
+    /**
+     * Count a number of items. Safe for use from several threads.
+     */
+    public void add( long items )
+    {
+        count.addAndGet( items );
+    }
+
+    public long count()
+    {
+        return count.get();
+    }
+
+    public void stop()
+    {
+        Thread thread = sampler;
+        sampler = null;
+        if ( thread != null )
+        {
+            thread.interrupt();
+            try
+            {
+                thread.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void sample()
+    {
+        long lastTime = startTime, lastCount = 0;
+        while ( sampler == Thread.currentThread() )
+        {
+            try
+            {
+                Thread.sleep( intervalMs );
+            }
+            catch ( InterruptedException e )
+            {
+                return;
+            }
+            long now = System.currentTimeMillis(), current = count.get();
+            print( current, now, ( current - lastCount ) / (double) Math.max( 1, now - lastTime ) );
+            lastTime = now;
+            lastCount = current;
+        }
+    }
+
+    private void print( long current, long now, double rate )
+    {
+        long elapsed = now - startTime;
+        double average = current / (double) Math.max( 1, elapsed );
+        StringBuilder line = new StringBuilder( what ).append( ": " ).append( current );
+        if ( total > 0 )
+        {
+            line.append( '/' ).append( total ).append(
+                    String.format( " (%.1f%%)", current * 100.0 / total ) );
+        }
+        line.append( String.format( ", %.3f/ms now, %.3f/ms average, %.1fs elapsed", rate,
+                average, elapsed / 1000.0 ) );
+        if ( total > 0 && average > 0 )
+        {
+            line.append( String.format( ", ETA %.1fs", ( total - current ) / average / 1000.0 ) );
+        }
+        System.out.println( line );
+    }
+}
@@ -0,0 +1,222 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two results files written through the
+ * {@code ConfiguredExample.results} system property. Records measuring the
+ * same thing are grouped by {@link ResultRecord#key()}, and the groups are
+ * compared with Welch's t-test, so that a difference is only flagged when it
+ * is larger than the run to run variation.
+ */
+public final class ResultComparison
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( ResultComparison.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void compare( String baseline, String candidate ) throws IOException
+    {
+        double alpha = Double.parseDouble( System.getProperty( "ResultComparison.alpha", "0.05" ) );
+        Map<String, List<ResultRecord>> before = group( ResultRecord.read( new File( baseline ) ) );
+        Map<String, List<ResultRecord>> after = group( ResultRecord.read( new File( candidate ) ) );
+        int regressions = 0, improvements = 0, compared = 0;
+        for ( Map.Entry<String, List<ResultRecord>> entry : before.entrySet() )
+        {
+            List<ResultRecord> other = after.get( entry.getKey() );
+            if ( other == null )
+            {
+                continue;
+            }
+            compared++;
+            System.out.println( entry.getKey() );
+            // higher throughput is better, lower latency is better
+            int throughput = compare( "throughput", values( entry.getValue(), "throughput" ),
+                    values( other, "throughput" ), alpha );
+            int latency = -compare( "p99 latency", values( entry.getValue(), "latency.p99" ),
+                    values( other, "latency.p99" ), alpha );
+            if ( throughput < 0 || latency < 0 )
+            {
+                regressions++;
+            }
+            else if ( throughput > 0 || latency > 0 )
+            {
+                improvements++;
+            }
+        }
+        System.out.println( "Compared " + compared + " measurements: " + regressions
+                            + " regressions, " + improvements + " improvements at alpha=" + alpha
+                            + "." );
+    }
+
+    private static Map<String, List<ResultRecord>> group( List<ResultRecord> records )
+    {
+        Map<String, List<ResultRecord>> result = new TreeMap<String, List<ResultRecord>>();
+        for ( ResultRecord record : records )
+        {
+            List<ResultRecord> group = result.get( record.key() );
+            if ( group == null )
+            {
+                result.put( record.key(), group = new ArrayList<ResultRecord>() );
+            }
+            group.add( record );
+        }
+        return result;
+    }
+
+    private static double[] values( List<ResultRecord> records, String field )
+    {
+        double[] result = new double[records.size()];
+        int count = 0;
+        for ( ResultRecord record : records )
+        {
+            double value = record.getDouble( field );
+            if ( !Double.isNaN( value ) )
+            {
+                result[count++] = value;
+            }
+        }
+        double[] values = new double[count];
+        System.arraycopy( result, 0, values, 0, count );
+        return values;
+    }
+
+    /**
+     * @return 1 if the candidate is significantly higher, -1 if it is
+     *         significantly lower, 0 otherwise.
+     */
+    private static int compare( String name, double[] baseline, double[] candidate, double alpha )
+    {
+        if ( baseline.length == 0 || candidate.length == 0 )
+        {
+            return 0;
+        }
+        double meanBefore = mean( baseline ), meanAfter = mean( candidate );
+        double change = ( meanAfter - meanBefore ) / meanBefore * 100;
+        if ( baseline.length < 2 || candidate.length < 2 )
+        {
+            System.out.printf( "  %s: %.3f -> %.3f (%+.1f%%), too few runs to test%n", name,
+                    meanBefore, meanAfter, change );
+            return 0;
+        }
+        double p = welchTest( baseline, candidate );
+        int result = p < alpha ? ( meanAfter > meanBefore ? 1 : -1 ) : 0;
+        System.out.printf( "  %s: %.3f -> %.3f (%+.1f%%), p=%.4f%s%n", name, meanBefore, meanAfter,
+                change, p, result == 0 ? "" : " SIGNIFICANT" );
+        return result;
+    }
+
+    private static double mean( double[] values )
+    {
+        double sum = 0;
+        for ( double value : values )
+        {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double variance( double[] values, double mean )
+    {
+        double sum = 0;
+        for ( double value : values )
+        {
+            sum += ( value - mean ) * ( value - mean );
+        }
+        return sum / ( values.length - 1 );
+    }
+
+    /**
+     * @return the two sided p-value of Welch's unequal variances t-test.
+     */
+    static double welchTest( double[] a, double[] b )
+    {
+        double meanA = mean( a ), meanB = mean( b );
+        double varA = variance( a, meanA ) / a.length, varB = variance( b, meanB ) / b.length;
+        if ( varA + varB == 0 )
+        {
+            return meanA == meanB ? 1.0 : 0.0;
+        }
+        double t = ( meanA - meanB ) / Math.sqrt( varA + varB );
+        double df = ( varA + varB ) * ( varA + varB )
+                    / ( varA * varA / ( a.length - 1 ) + varB * varB / ( b.length - 1 ) );
+        return regularizedBeta( df / ( df + t * t ), df / 2, 0.5 );
+    }
+
+    private static double regularizedBeta( double x, double a, double b )
+    {
+        if ( x <= 0 )
+        {
+            return 0;
+        }
+        if ( x >= 1 )
+        {
+            return 1;
+        }
+        double front = Math.exp( logGamma( a + b ) - logGamma( a ) - logGamma( b ) + a
+                                 * Math.log( x ) + b * Math.log( 1 - x ) );
+        if ( x < ( a + 1 ) / ( a + b + 2 ) )
+        {
+            return front * betaFraction( x, a, b ) / a;
+        }
+        return 1 - front * betaFraction( 1 - x, b, a ) / b;
+    }
+
+    /**
+     * Continued fraction for the incomplete beta function, evaluated with the
+     * modified Lentz method.
+     */
+    private static double betaFraction( double x, double a, double b )
+    {
+        final double tiny = 1e-300;
+        double c = 1, d = 1 - ( a + b ) * x / ( a + 1 );
+        d = 1 / ( Math.abs( d ) < tiny ? tiny : d );
+        double h = d;
+        for ( int m = 1; m <= 300; m++ )
+        {
+            double numerator = m * ( b - m ) * x / ( ( a + 2 * m - 1 ) * ( a + 2 * m ) );
+            d = 1 / nonZero( 1 + numerator * d, tiny );
+            c = nonZero( 1 + numerator / c, tiny );
+            h *= d * c;
+            numerator = -( a + m ) * ( a + b + m ) * x / ( ( a + 2 * m ) * ( a + 2 * m + 1 ) );
+            d = 1 / nonZero( 1 + numerator * d, tiny );
+            c = nonZero( 1 + numerator / c, tiny );
+            double delta = d * c;
+            h *= delta;
+            if ( Math.abs( delta - 1 ) < 1e-12 )
+            {
+                break;
+            }
+        }
+        return h;
+    }
+
+    private static double nonZero( double value, double tiny )
+    {
+        return Math.abs( value ) < tiny ? tiny : value;
+    }
+
+    /**
+     * Lanczos approximation of the logarithm of the gamma function.
+     */
+    private static double logGamma( double x )
+    {
+        final double[] coefficients = { 76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+        double y = x, tmp = x + 5.5;
+        tmp -= ( x + 0.5 ) * Math.log( tmp );
+        double series = 1.000000000190015;
+        for ( double coefficient : coefficients )
+        {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log( 2.5066282746310005 * series / x );
+    }
+}
@@ -0,0 +1,513 @@
+package org.neo4j.examples.performance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One measurement from an example, in a form that can be written to and read
+ * back from a results file.
+ * <p>
+ * A record has a few top level fields ({@code example}, {@code entry},
+ * {@code metric}, {@code throughput}, ...) and a number of groups of
+ * key/value pairs ({@code params}, {@code settings}, {@code config},
+ * {@code latency}, {@code metrics}, {@code jvm}, {@code attributes},
+ * {@code deltas}). Files ending in {@code .csv} get one column per top level
+ * field and one column per group, holding the group as a JSON object. All
+ * other files get one JSON object per line.
+ */
+public final class ResultRecord
+{
+    private static final String[] FIELDS = { "example", "entry", "metric", "timestamp", "throughput",
+            "unit" };
+    private static final String[] GROUPS = { "params", "settings", "config", "latency",
+            "metrics", "jvm", "attributes", "deltas" };
+    /**
+     * Settings that do not change what is measured, and thus do not take
+     * part in deciding which records are comparable.
+     */
+    private static final String[] INCIDENTAL_SETTINGS = { "storeDir", "renderProgression",
+            "seed", "file", "results" };
+
+    private final Map<String, String> fields = new LinkedHashMap<String, String>();
+    private final Map<String, Boolean> numeric = new LinkedHashMap<String, Boolean>();
+
+    public ResultRecord( String example, String entry, String metric )
+    {
+        set( "example", example );
+        set( "entry", entry );
+        set( "metric", metric );
+        set( "timestamp", new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSZ" ).format( new Date() ) );
+    }
+
+    private ResultRecord()
+    {
+    }
+
+    /**
+     * Numbers are written as JSON numbers, except infinite and NaN values,
+     * such as the throughput of a run too short to measure, which JSON has no
+     * numbers for and are written as strings instead.
+     */
+    public ResultRecord set( String key, Object value )
+    {
+        fields.put( key, String.valueOf( value ) );
+        numeric.put( key, value instanceof Number && isFinite( (Number) value ) );
+        return this;
+    }
+
+    private static boolean isFinite( Number value )
+    {
+        double number = value.doubleValue();
+        return !Double.isNaN( number ) && !Double.isInfinite( number );
+    }
+
+    public ResultRecord set( String group, String key, Object value )
+    {
+        return set( group + "." + key, value );
+    }
+
+    public ResultRecord throughput( double value, String unit )
+    {
+        set( "throughput", value );
+        return set( "unit", unit );
+    }
+
+    public ResultRecord latency( LatencyHistogram histogram )
+    {
+        set( "latency", "p50", histogram.percentile( 50 ) );
+        set( "latency", "p99", histogram.percentile( 99 ) );
+        set( "latency", "p99_9", histogram.percentile( 99.9 ) );
+        set( "latency", "max", histogram.max() );
+        return set( "latency", "samples", histogram.count() );
+    }
+
+    public String get( String key )
+    {
+        return fields.get( key );
+    }
+
+    public double getDouble( String key )
+    {
+        String value = fields.get( key );
+        return value == null ? Double.NaN : Double.parseDouble( value );
+    }
+
+    /**
+     * @return a string identifying what was measured, equal for records
+     *         that can be compared with each other. Besides the parameters,
+     *         settings and Neo4j configuration it includes the JVM flags,
+     *         such as the heap size, except for system properties, which are
+     *         in the settings already when they matter.
+     */
+    public String key()
+    {
+        StringBuilder key = new StringBuilder();
+        key.append( get( "example" ) ).append( '.' ).append( get( "entry" ) ).append( ' ' ).append(
+                get( "metric" ) );
+        for ( Map.Entry<String, String> field : fields.entrySet() )
+        {
+            String name = field.getKey();
+            if ( name.startsWith( "params." ) || name.startsWith( "config." )
+                 || ( name.startsWith( "settings." ) && !isIncidental( name ) ) )
+            {
+                key.append( ' ' ).append( name.substring( name.indexOf( '.' ) + 1 ) ).append( '=' ).append(
+                        field.getValue() );
+            }
+        }
+        String flags = get( "jvm.flags" );
+        if ( flags != null )
+        {
+            StringBuilder jvm = new StringBuilder();
+            for ( String flag : flags.split( " " ) )
+            {
+                if ( flag.length() > 0 && !flag.startsWith( "-D" ) )
+                {
+                    jvm.append( jvm.length() == 0 ? "" : " " ).append( flag );
+                }
+            }
+            key.append( " jvm=[" ).append( jvm ).append( ']' );
+        }
+        return key.toString();
+    }
+
+    private static boolean isIncidental( String name )
+    {
+        for ( String setting : INCIDENTAL_SETTINGS )
+        {
+            if ( name.equals( "settings." + setting ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void appendTo( File file ) throws IOException
+    {
+        boolean csv = isCsv( file );
+        boolean header = csv && !file.exists();
+        Writer out = new FileWriter( file, true );
+        try
+        {
+            if ( header )
+            {
+                out.write( csvHeader() );
+                out.write( '\n' );
+            }
+            out.write( csv ? toCsv() : toJson() );
+            out.write( '\n' );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public static List<ResultRecord> read( File file ) throws IOException
+    {
+        boolean csv = isCsv( file );
+        List<ResultRecord> result = new ArrayList<ResultRecord>();
+        BufferedReader in = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            if ( csv )
+            {
+                in.readLine(); // header
+            }
+            for ( String line; ( line = in.readLine() ) != null; )
+            {
+                if ( line.trim().length() > 0 )
+                {
+                    result.add( csv ? parseCsv( line ) : parseJson( line ) );
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return result;
+    }
+
+    private static boolean isCsv( File file )
+    {
+        return file.getName().endsWith( ".csv" );
+    }
+
+    // JSON
+
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder( "{" );
+        String sep = "";
+        for ( String field : FIELDS )
+        {
+            if ( fields.containsKey( field ) )
+            {
+                json.append( sep );
+                appendJson( json, field, field );
+                sep = ",";
+            }
+        }
+        for ( String group : GROUPS )
+        {
+            String object = groupToJson( group );
+            if ( object != null )
+            {
+                json.append( sep );
+                quote( json, group ).append( ':' ).append( object );
+                sep = ",";
+            }
+        }
+        return json.append( '}' ).toString();
+    }
+
+    private String groupToJson( String group )
+    {
+        StringBuilder json = null;
+        String prefix = group + ".";
+        for ( String key : fields.keySet() )
+        {
+            if ( key.startsWith( prefix ) )
+            {
+                json = json == null ? new StringBuilder( "{" ) : json.append( ',' );
+                appendJson( json, key.substring( prefix.length() ), key );
+            }
+        }
+        return json == null ? null : json.append( '}' ).toString();
+    }
+
+    private void appendJson( StringBuilder json, String name, String key )
+    {
+        quote( json, name ).append( ':' );
+        if ( numeric.get( key ) )
+        {
+            json.append( fields.get( key ) );
+        }
+        else
+        {
+            quote( json, fields.get( key ) );
+        }
+    }
+
+    private static StringBuilder quote( StringBuilder json, String value )
+    {
+        json.append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            switch ( c )
+            {
+            case '"':
+            case '\\':
+                json.append( '\\' ).append( c );
+                break;
+            case '\n':
+                json.append( "\\n" );
+                break;
+            case '\r':
+                json.append( "\\r" );
+                break;
+            case '\t':
+                json.append( "\\t" );
+                break;
+            default:
+                if ( c < 0x20 )
+                {
+                    json.append( String.format( "\\u%04x", (int) c ) );
+                }
+                else
+                {
+                    json.append( c );
+                }
+            }
+        }
+        return json.append( '"' );
+    }
+
+    static ResultRecord parseJson( String line )
+    {
+        ResultRecord record = new ResultRecord();
+        new JsonParser( line ).parseObject( record, "" );
+        return record;
+    }
+
+    /**
+     * Parses the subset of JSON written by {@link #toJson()}: objects nested
+     * one level, with string and number values.
+     */
+    private static final class JsonParser
+    {
+        private final String text;
+        private int pos;
+
+        JsonParser( String text )
+        {
+            this.text = text;
+        }
+
+        void parseObject( ResultRecord record, String prefix )
+        {
+            expect( '{' );
+            if ( peek() == '}' )
+            {
+                pos++;
+                return;
+            }
+            do
+            {
+                String key = prefix + parseString();
+                expect( ':' );
+                char c = peek();
+                if ( c == '{' )
+                {
+                    parseObject( record, key + "." );
+                }
+                else if ( c == '"' )
+                {
+                    record.set( key, parseString() );
+                }
+                else
+                {
+                    int start = pos;
+                    while ( pos < text.length() && ",}] \t".indexOf( text.charAt( pos ) ) < 0 )
+                    {
+                        pos++;
+                    }
+                    record.fields.put( key, text.substring( start, pos ) );
+                    record.numeric.put( key, Boolean.TRUE );
+                }
+            }
+            while ( next() == ',' );
+            pos--;
+            expect( '}' );
+        }
+
+        private String parseString()
+        {
+            expect( '"' );
+            StringBuilder result = new StringBuilder();
+            for ( char c; ( c = text.charAt( pos++ ) ) != '"'; )
+            {
+                if ( c == '\\' )
+                {
+                    c = text.charAt( pos++ );
+                    switch ( c )
+                    {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        c = (char) Integer.parseInt( text.substring( pos, pos + 4 ), 16 );
+                        pos += 4;
+                        break;
+                    }
+                }
+                result.append( c );
+            }
+            return result.toString();
+        }
+
+        private char peek()
+        {
+            while ( Character.isWhitespace( text.charAt( pos ) ) )
+            {
+                pos++;
+            }
+            return text.charAt( pos );
+        }
+
+        private char next()
+        {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect( char expected )
+        {
+            if ( next() != expected )
+            {
+                throw new IllegalArgumentException( "Expected '" + expected + "' at position "
+                                                    + ( pos - 1 ) + " of: " + text );
+            }
+        }
+    }
+
+    // CSV
+
+    private static String csvHeader()
+    {
+        StringBuilder header = new StringBuilder();
+        for ( String field : FIELDS )
+        {
+            header.append( field ).append( ',' );
+        }
+        for ( String group : GROUPS )
+        {
+            header.append( group ).append( ',' );
+        }
+        return header.substring( 0, header.length() - 1 );
+    }
+
+    public String toCsv()
+    {
+        StringBuilder csv = new StringBuilder();
+        for ( String field : FIELDS )
+        {
+            String value = fields.get( field );
+            csvCell( csv, value == null ? "" : value ).append( ',' );
+        }
+        for ( String group : GROUPS )
+        {
+            String object = groupToJson( group );
+            csvCell( csv, object == null ? "" : object ).append( ',' );
+        }
+        return csv.substring( 0, csv.length() - 1 );
+    }
+
+    private static StringBuilder csvCell( StringBuilder csv, String value )
+    {
+        if ( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0 )
+        {
+            return csv.append( value );
+        }
+        return csv.append( '"' ).append( value.replace( "\"", "\"\"" ) ).append( '"' );
+    }
+
+    static ResultRecord parseCsv( String line )
+    {
+        List<String> cells = new ArrayList<String>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for ( int i = 0; i < line.length(); i++ )
+        {
+            char c = line.charAt( i );
+            if ( quoted )
+            {
+                if ( c == '"' && i + 1 < line.length() && line.charAt( i + 1 ) == '"' )
+                {
+                    cell.append( '"' );
+                    i++;
+                }
+                else if ( c == '"' )
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    cell.append( c );
+                }
+            }
+            else if ( c == '"' )
+            {
+                quoted = true;
+            }
+            else if ( c == ',' )
+            {
+                cells.add( cell.toString() );
+                cell.setLength( 0 );
+            }
+            else
+            {
+                cell.append( c );
+            }
+        }
+        cells.add( cell.toString() );
+        ResultRecord record = new ResultRecord();
+        for ( int i = 0; i < FIELDS.length && i < cells.size(); i++ )
+        {
+            if ( cells.get( i ).length() > 0 )
+            {
+                record.set( FIELDS[i], cells.get( i ) );
+                record.numeric.put( FIELDS[i], FIELDS[i].equals( "throughput" )
+                                               && isFinite( record.getDouble( FIELDS[i] ) ) );
+            }
+        }
+        for ( int i = 0; i < GROUPS.length && FIELDS.length + i < cells.size(); i++ )
+        {
+            String object = cells.get( FIELDS.length + i );
+            if ( object.length() > 0 )
+            {
+                new JsonParser( object ).parseObject( record, GROUPS[i] + "." );
+            }
+        }
+        return record;
+    }
+}
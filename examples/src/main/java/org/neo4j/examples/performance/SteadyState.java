@@ -0,0 +1,112 @@
+package org.neo4j.examples.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when repeated runs have reached a steady state, defined as the
+ * coefficient of variation (standard deviation over mean) of the throughput
+ * of the last {@code window} runs being at most a target value.
+ * <p>
+ * The first run is always considered cold, it measures the state right after
+ * the store was opened. The runs between the cold run and the steady window
+ * are the warm-up, where the JIT compiler and the caches are still settling.
+ */
+public final class SteadyState
+{
+    public static final String COLD = "cold";
+    public static final String WARMUP = "warmup";
+    public static final String STEADY = "steady";
+
+    private final int window;
+    private final double cvTarget;
+    private final List<Double> samples = new ArrayList<Double>();
+    private int steadyFrom = -1;
+
+    public SteadyState( int window, double cvTarget )
+    {
+        this.window = Math.max( 2, window );
+        this.cvTarget = cvTarget;
+    }
+
+    /**
+     * @return {@code true} if the steady state has been reached.
+     */
+    public boolean add( double throughput )
+    {
+        samples.add( throughput );
+        if ( steadyFrom < 0 && samples.size() > window
+             && variation( samples.size() - window ) <= cvTarget )
+        {
+            steadyFrom = samples.size() - window;
+        }
+        return steadyFrom >= 0;
+    }
+
+    public boolean isSteady()
+    {
+        return steadyFrom >= 0;
+    }
+
+    public String phase( int run )
+    {
+        if ( run == 0 )
+        {
+            return COLD;
+        }
+        return steadyFrom >= 0 && run >= steadyFrom ? STEADY : WARMUP;
+    }
+
+    private double mean( int from, int to )
+    {
+        double sum = 0;
+        for ( int i = from; i < to; i++ )
+        {
+            sum += samples.get( i );
+        }
+        return sum / ( to - from );
+    }
+
+    private double deviation( int from, int to )
+    {
+        double mean = mean( from, to ), sum = 0;
+        for ( int i = from; i < to; i++ )
+        {
+            sum += ( samples.get( i ) - mean ) * ( samples.get( i ) - mean );
+        }
+        return Math.sqrt( sum / ( to - from - 1 ) );
+    }
+
+    private double variation( int from )
+    {
+        return deviation( from, samples.size() ) / mean( from, samples.size() );
+    }
+
+    public void printSummary( String unit )
+    {
+        if ( samples.isEmpty() )
+        {
+            return;
+        }
+        System.out.printf( "Cold run: %.3f %s%n", samples.get( 0 ), unit );
+        int warmupEnd = steadyFrom >= 0 ? steadyFrom : samples.size();
+        if ( warmupEnd > 1 )
+        {
+            System.out.printf( "Warm-up: %s runs, %.3f %s on average, last %.3f %s%n",
+                    warmupEnd - 1, mean( 1, warmupEnd ), unit, samples.get( warmupEnd - 1 ), unit );
+        }
+        if ( steadyFrom >= 0 )
+        {
+            System.out.printf( "Steady state: %.3f %s +/- %.3f (CV %.2f%% over %s runs)%n", mean(
+                    steadyFrom, samples.size() ), unit, deviation( steadyFrom, samples.size() ),
+                    variation( steadyFrom ) * 100, window );
+        }
+        else
+        {
+            System.out.printf( "No steady state within %s runs, CV of the last %s runs "
+                               + "is %.2f%% (target %.2f%%)%n", samples.size(), window,
+                    samples.size() > window ? variation( samples.size() - window ) * 100
+                            : Double.NaN, cvTarget * 100 );
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Predicts the I/O cost of traversing a store from its layout alone, by
+ * reading the store files directly and following the relationship chain of
+ * every node. For every chain it measures:
+ * <ul>
+ * <li>the average gap between the ids of consecutive relationships,</li>
+ * <li>the number of distinct {@code windowSize} windows of the relationship
+ * store the chain touches, which is what the mapped memory has to hold to
+ * expand the node without remapping, and</li>
+ * <li>the number of times the chain moves to another {@code pageSize}
+ * page, which approximates the page faults of a cold expansion.</li>
+ * </ul>
+ * The results are broken down by chain length in decades, since the long
+ * chains of the dense nodes are what the traversals spend their time on.
+ */
+public class StoreLocality extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( StoreLocality.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void analyze() throws IOException
+    {
+        new StoreLocality().analyzeStore();
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final String storeDir;
+    private final long windowSize;
+    private final long pageSize;
+    private final int sample;
+
+    private final long[] chains = new long[BUCKETS];
+    private final long[] relationships = new long[BUCKETS];
+    private final double[] gaps = new double[BUCKETS];
+    private final long[] windows = new long[BUCKETS];
+    private final long[] pages = new long[BUCKETS];
+
+    private StoreLocality()
+    {
+        super( null );
+        this.storeDir = stringProperty( "storeDir", "target/neo4j-db/UsersAndBooks" );
+        this.windowSize = longProperty( "windowSize", 1024 * 1024 );
+        this.pageSize = longProperty( "pageSize", 4096 );
+        this.sample = intProperty( "sample", 1 );
+    }
+
+    private void analyzeStore() throws IOException
+    {
+        StoreRecords nodes = StoreRecords.open( new File( storeDir, "neostore.nodestore.db" ),
+                StoreRecords.NODE_RECORD_SIZE );
+        StoreRecords rels = StoreRecords.open( new File( storeDir,
+                "neostore.relationshipstore.db" ), StoreRecords.RELATIONSHIP_RECORD_SIZE );
+        System.out.printf( "Analyzing %s: %s node records, %s relationship records, "
+                           + "%s byte windows, %s byte pages, every %s node%n", storeDir,
+                nodes.records(), rels.records(), windowSize, pageSize, sample );
+
+        LongIntCounts touched = new LongIntCounts( 1024 );
+        long time = System.currentTimeMillis();
+        ProgressReporter progress = progress( "nodes", nodes.records() );
+        try
+        {
+            for ( long node = 0; node < nodes.records(); node += sample )
+            {
+                progress.add( sample );
+                if ( nodes.inUse( node ) )
+                {
+                    analyzeChain( node, nodes.id( node, StoreRecords.NODE_NEXT_RELATIONSHIP ), rels,
+                            touched );
+                }
+            }
+        }
+        finally
+        {
+            progress.stop();
+        }
+        time = System.currentTimeMillis() - time;
+
+        long totalChains = 0, totalRelationships = 0, totalWindows = 0, totalPages = 0;
+        double totalGaps = 0;
+        System.out.println( "length\tchains\trelationships\tgap\twindows/chain\tpages/chain\tpages/rel" );
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( chains[i] > 0 )
+            {
+                System.out.printf( "%s\t%s\t%s\t%.1f\t%.2f\t%.2f\t%.4f%n", range( i ), chains[i],
+                        relationships[i], gap( gaps[i], relationships[i], chains[i] ),
+                        windows[i] / (double) chains[i], pages[i] / (double) chains[i],
+                        pages[i] / (double) relationships[i] );
+                totalChains += chains[i];
+                totalRelationships += relationships[i];
+                totalGaps += gaps[i];
+                totalWindows += windows[i];
+                totalPages += pages[i];
+            }
+        }
+        System.out.printf( "Analyzed %s chains with %s relationships in %.3f seconds.%n",
+                totalChains, totalRelationships, time / 1000.0 );
+
+        ResultRecord result = result( "analyze", "relationships" ).throughput(
+                totalRelationships / (double) Math.max( 1, time ), "relationships/ms" );
+        result.set( "metrics", "chains", totalChains );
+        result.set( "metrics", "averageGap", gap( totalGaps, totalRelationships, totalChains ) );
+        result.set( "metrics", "windowsPerChain", totalWindows / (double) Math.max( 1, totalChains ) );
+        result.set( "metrics", "pagesPerRelationship",
+                totalPages / (double) Math.max( 1, totalRelationships ) );
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( chains[i] > 0 )
+            {
+                String prefix = "length." + range( i ) + ".";
+                result.set( "metrics", prefix + "chains", chains[i] );
+                result.set( "metrics", prefix + "averageGap", gap( gaps[i], relationships[i],
+                        chains[i] ) );
+                result.set( "metrics", prefix + "windowsPerChain", windows[i] / (double) chains[i] );
+                result.set( "metrics", prefix + "pagesPerRelationship",
+                        pages[i] / (double) relationships[i] );
+            }
+        }
+        report( result );
+    }
+
+    private void analyzeChain( long node, long rel, StoreRecords rels, LongIntCounts touched )
+    {
+        touched.clear();
+        long length = 0, pageCount = 0, previous = StoreRecords.NONE;
+        double gapSum = 0;
+        while ( rel != StoreRecords.NONE )
+        {
+            if ( rel >= rels.records() || length > rels.records() )
+            {
+                System.out.println( "Broken relationship chain of node " + node + " at " + rel );
+                break;
+            }
+            long offset = rel * rels.recordSize();
+            touched.increment( offset / windowSize );
+            if ( previous == StoreRecords.NONE
+                 || offset / pageSize != previous * rels.recordSize() / pageSize )
+            {
+                pageCount++;
+            }
+            if ( previous != StoreRecords.NONE )
+            {
+                gapSum += Math.abs( rel - previous );
+            }
+            length++;
+            previous = rel;
+            rel = rels.id( rel, rels.id( rel, StoreRecords.RELATIONSHIP_FIRST_NODE ) == node
+                    ? StoreRecords.RELATIONSHIP_FIRST_NEXT : StoreRecords.RELATIONSHIP_SECOND_NEXT );
+        }
+        if ( length == 0 )
+        {
+            return;
+        }
+        int bucket = bucket( length );
+        chains[bucket]++;
+        relationships[bucket] += length;
+        gaps[bucket] += gapSum;
+        windows[bucket] += touched.size();
+        pages[bucket] += pageCount;
+    }
+
+    /**
+     * @return the average gap between consecutive relationships of a chain.
+     */
+    private static double gap( double gapSum, long relationships, long chains )
+    {
+        return relationships > chains ? gapSum / ( relationships - chains ) : 0;
+    }
+
+    private static int bucket( long length )
+    {
+        int bucket = 0;
+        for ( long limit = 10; length >= limit && bucket < BUCKETS - 1; limit *= 10 )
+        {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String range( int bucket )
+    {
+        long low = 1;
+        for ( int i = 0; i < bucket; i++ )
+        {
+            low *= 10;
+        }
+        return bucket == 0 ? "1-9" : bucket == BUCKETS - 1 ? low + "-" : low + "-" + ( low * 10 - 1 );
+    }
+}
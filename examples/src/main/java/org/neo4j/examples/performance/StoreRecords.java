@@ -0,0 +1,116 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only access to the fixed size records of a Neo4j store file, such as
+ * {@code neostore.nodestore.db} or {@code neostore.relationshipstore.db},
+ * without starting the kernel.
+ * <p>
+ * A node record is an in use byte followed by the ids of the first
+ * relationship and the first property. A relationship record is an in use
+ * byte followed by the ids of the first node, the second node, the type, the
+ * previous and next relationship of the first node, the previous and next
+ * relationship of the second node and the first property. Ids are stored as
+ * four byte ints, with -1 for none.
+ */
+public final class StoreRecords
+{
+    public static final int NODE_RECORD_SIZE = 9;
+    public static final int NODE_NEXT_RELATIONSHIP = 1;
+
+    public static final int RELATIONSHIP_RECORD_SIZE = 33;
+    public static final int RELATIONSHIP_FIRST_NODE = 1;
+    public static final int RELATIONSHIP_SECOND_NODE = 5;
+    public static final int RELATIONSHIP_FIRST_NEXT = 17;
+    public static final int RELATIONSHIP_SECOND_NEXT = 25;
+
+    /**
+     * Returned by {@link #id(long, int)} for an id field holding -1.
+     */
+    public static final long NONE = -1;
+
+    private static final int SEGMENT_BITS = 30;
+
+    private final ByteBuffer[] segments;
+    private final int recordSize;
+    private final long segmentRecords;
+    private final long records;
+
+    private StoreRecords( ByteBuffer[] segments, int recordSize, long segmentRecords, long records )
+    {
+        this.segments = segments;
+        this.recordSize = recordSize;
+        this.segmentRecords = segmentRecords;
+        this.records = records;
+    }
+
+    public static StoreRecords open( File file, int recordSize ) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            /* Map the file in segments of about 1GB holding a whole number of
+             * records, so that no record straddles two segments. The type
+             * descriptor at the end of the file is left out of the records.
+             */
+            long segmentRecords = ( 1L << SEGMENT_BITS ) / recordSize;
+            long records = size / recordSize;
+            ByteBuffer[] segments = new ByteBuffer[(int) ( ( records + segmentRecords - 1 ) / segmentRecords )];
+            for ( int i = 0; i < segments.length; i++ )
+            {
+                long position = i * segmentRecords * recordSize;
+                segments[i] = channel.map( FileChannel.MapMode.READ_ONLY, position, Math.min(
+                        segmentRecords * recordSize, records * recordSize - position ) );
+            }
+            return new StoreRecords( segments, recordSize, segmentRecords, records );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the number of records in the file, used or not.
+     */
+    public long records()
+    {
+        return records;
+    }
+
+    public int recordSize()
+    {
+        return recordSize;
+    }
+
+    public boolean inUse( long record )
+    {
+        return ( segment( record ).get( position( record ) ) & 0x1 ) != 0;
+    }
+
+    /**
+     * @return the id stored at the offset of the record, or {@link #NONE}.
+     */
+    public long id( long record, int offset )
+    {
+        int id = segment( record ).getInt( position( record ) + offset );
+        return id == -1 ? NONE : id & 0xFFFFFFFFL;
+    }
+
+    private ByteBuffer segment( long record )
+    {
+        return segments[(int) ( record / segmentRecords )];
+    }
+
+    private int position( long record )
+    {
+        return (int) ( record % segmentRecords ) * recordSize;
+    }
+}
@@ -0,0 +1,297 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.neo4j.kernel.impl.batchinsert.SimpleRelationship;
+
+/**
+ * Rewrites a store into a new store with the relationships inserted in
+ * traversal order, so that the relationships expanded together get
+ * consecutive ids and end up next to each other in the relationship store.
+ * A store that was built incrementally, like the non-clustered layouts of
+ * {@link UsersAndBooks}, has the relationships of every node scattered over
+ * the store; comparing the traversal benchmarks on the original and the
+ * rewritten store shows how much of the cost is fragmentation. It also
+ * serves as an offline compaction, since deleted records are not copied.
+ * <p>
+ * The store in {@code storeDir} is read with one batch inserter and written
+ * to {@code targetDir} with another, neither of which may be in use by a
+ * running database. With {@code renumberNodes} the nodes also get new ids in
+ * the order they are reached, so the users of a book are consecutive as
+ * well. The traversals starting from the reference node work on such a
+ * store, but entries that compute node ids from the dataset parameters, such
+ * as {@code recommend} and {@code mixed}, need the original ids kept.
+ */
+public class StoreReordering extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( StoreReordering.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void reorder() throws IOException
+    {
+        new StoreReordering().reorderStore();
+    }
+
+    private enum Order
+    {
+        /**
+         * Breadth first from the reference node, then from every node not
+         * reached yet in id order. The relationships of a node are inserted
+         * when it is expanded, unless they were inserted from the other end
+         * already.
+         */
+        BREADTH_FIRST,
+        /**
+         * Every node in id order, with all relationships ending at it. For
+         * the {@code FAVORITE} relationships of {@link UsersAndBooks} this
+         * puts the relationship from the reference node and all users of a
+         * book together, as the {@code CLUSTERED} layout does.
+         */
+        GROUPED,
+    }
+
+    private final String storeDir;
+    private final String targetDir;
+    private final Order order;
+    private final boolean renumberNodes;
+
+    private BatchInserter source;
+    private BatchInserter target;
+    private long[] newIds;
+    private long copied;
+    private ProgressReporter progress;
+
+    private StoreReordering()
+    {
+        super( null );
+        this.storeDir = stringProperty( "storeDir", "target/neo4j-db/UsersAndBooks" );
+        this.targetDir = stringProperty( "targetDir", storeDir + "-reordered" );
+        this.order = enumProperty( Order.class, "order", Order.BREADTH_FIRST );
+        this.renumberNodes = booleanProperty( "renumberNodes", true );
+    }
+
+    private void reorderStore() throws IOException
+    {
+        File nodeStore = new File( storeDir, "neostore.nodestore.db" );
+        if ( !nodeStore.exists() )
+        {
+            throw new IllegalArgumentException( "No store in " + storeDir + ", create it first" );
+        }
+        if ( new File( targetDir, "neostore.nodestore.db" ).exists() )
+        {
+            throw new IllegalArgumentException( "There is already a store in " + targetDir
+                                                + ", remove it first" );
+        }
+        long nodes = nodeStore.length() / StoreRecords.NODE_RECORD_SIZE;
+        long relationships = new File( storeDir, "neostore.relationshipstore.db" ).length()
+                             / StoreRecords.RELATIONSHIP_RECORD_SIZE;
+        if ( nodes > Integer.MAX_VALUE )
+        {
+            throw new IllegalArgumentException( "Cannot reorder a store of " + nodes + " nodes" );
+        }
+        System.out.printf( "Reordering %s into %s %s: %s node records, %s relationship records%n",
+                storeDir, targetDir, order, nodes, relationships );
+
+        newIds = new long[(int) nodes];
+        Arrays.fill( newIds, StoreRecords.NONE );
+        copied = 0;
+        long time = System.currentTimeMillis();
+        source = new BatchInserterImpl( storeDir, neo4jConfiguration );
+        try
+        {
+            target = new BatchInserterImpl( targetDir, neo4jConfiguration );
+            try
+            {
+                copyNodes( (int) nodes );
+                progress = progress( "relationships", relationships );
+                try
+                {
+                    switch ( order )
+                    {
+                    case BREADTH_FIRST:
+                        breadthFirst( (int) nodes );
+                        break;
+                    case GROUPED:
+                        grouped( (int) nodes );
+                        break;
+                    }
+                }
+                finally
+                {
+                    progress.stop();
+                }
+            }
+            finally
+            {
+                target.shutdown();
+            }
+        }
+        finally
+        {
+            source.shutdown();
+        }
+        time = System.currentTimeMillis() - time;
+
+        long copiedNodes = 0;
+        for ( long id : newIds )
+        {
+            if ( id != StoreRecords.NONE )
+            {
+                copiedNodes++;
+            }
+        }
+        System.out.printf( "Copied %s nodes and %s relationships in %.3f seconds.%n", copiedNodes,
+                copied, time / 1000.0 );
+        if ( !renumberNodes )
+        {
+            copyCheckpoint();
+        }
+        ResultRecord result = result( "reorder", "relationships" ).throughput(
+                copied / (double) Math.max( 1, time ), "relationships/ms" );
+        result.set( "metrics", "nodes", copiedNodes );
+        result.set( "metrics", "relationships", copied );
+        report( result );
+    }
+
+    /**
+     * Map the reference node to the reference node of the new store, and
+     * unless the nodes are renumbered create all other nodes with their
+     * original ids up front.
+     */
+    private void copyNodes( int nodes )
+    {
+        long reference = source.getReferenceNode();
+        newIds[(int) reference] = target.getReferenceNode();
+        Map<String, Object> properties = source.getNodeProperties( reference );
+        if ( properties != null && !properties.isEmpty() )
+        {
+            target.setNodeProperties( newIds[(int) reference], properties );
+        }
+        if ( renumberNodes )
+        {
+            return;
+        }
+        for ( int node = 0; node < nodes; node++ )
+        {
+            if ( node != reference && source.nodeExists( node ) )
+            {
+                target.createNode( node, source.getNodeProperties( node ) );
+                newIds[node] = node;
+            }
+        }
+    }
+
+    private void breadthFirst( int nodes )
+    {
+        int[] queue = new int[nodes];
+        BitSet queued = new BitSet( nodes );
+        BitSet expanded = new BitSet( nodes );
+        breadthFirst( (int) source.getReferenceNode(), queue, queued, expanded );
+        for ( int node = 0; node < nodes; node++ )
+        {
+            if ( !queued.get( node ) && source.nodeExists( node ) )
+            {
+                breadthFirst( node, queue, queued, expanded );
+            }
+        }
+    }
+
+    private void breadthFirst( int start, int[] queue, BitSet queued, BitSet expanded )
+    {
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        queued.set( start );
+        node( start );
+        while ( head < tail )
+        {
+            int node = queue[head++];
+            for ( SimpleRelationship relationship : source.getRelationships( node ) )
+            {
+                int other = (int) ( relationship.getStartNode() == node ? relationship.getEndNode()
+                        : relationship.getStartNode() );
+                if ( !queued.get( other ) )
+                {
+                    queue[tail++] = other;
+                    queued.set( other );
+                    node( other );
+                }
+                if ( !expanded.get( other ) || other == node )
+                {
+                    copy( relationship );
+                }
+            }
+            expanded.set( node );
+        }
+    }
+
+    private void grouped( int nodes )
+    {
+        for ( int node = 0; node < nodes; node++ )
+        {
+            if ( !source.nodeExists( node ) )
+            {
+                continue;
+            }
+            node( node );
+            for ( SimpleRelationship relationship : source.getRelationships( node ) )
+            {
+                if ( relationship.getEndNode() == node )
+                {
+                    copy( relationship );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the id in the new store of a node of the old store, creating
+     *         it on first use.
+     */
+    private long node( long node )
+    {
+        long id = newIds[(int) node];
+        if ( id == StoreRecords.NONE )
+        {
+            id = target.createNode( source.getNodeProperties( node ) );
+            newIds[(int) node] = id;
+        }
+        return id;
+    }
+
+    private void copy( SimpleRelationship relationship )
+    {
+        Map<String, Object> properties = source.getRelationshipProperties( relationship.getId() );
+        target.createRelationship( node( relationship.getStartNode() ),
+                node( relationship.getEndNode() ), relationship.getType(),
+                properties == null || properties.isEmpty() ? null : properties );
+        copied++;
+        progress.increment();
+    }
+
+    /**
+     * With the node ids kept the dataset checkpoint still describes the new
+     * store, so that it can be extended like the original.
+     */
+    private void copyCheckpoint() throws IOException
+    {
+        DatasetCheckpoint checkpoint;
+        try
+        {
+            checkpoint = DatasetCheckpoint.load( storeDir );
+        }
+        catch ( IOException noCheckpoint )
+        {
+            return;
+        }
+        checkpoint.copy( targetDir ).save();
+    }
+}
@@ -0,0 +1,2453 @@
+package org.neo4j.examples.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.neo4j.commons.iterator.FilteringIterator;
+import org.neo4j.commons.iterator.IteratorWrapper;
+import org.neo4j.commons.iterator.NestingIterator;
+import org.neo4j.examples.performance.ConfiguredExample.IntrospectionAttribute;
+import org.neo4j.examples.performance.ConfiguredExample.StringRepresentation;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.batchinsert.BatchInserter;
+import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+
+@StringRepresentation( IntrospectionAttribute.GARBAGE_COLLECTORS )
+public class UsersAndBooks extends ConfiguredExample
+{
+    public static void main( String[] args )
+    {
+        new MainMethod( UsersAndBooks.class ).dispatch( args );
+    }
+
+    @MainMethod.Entry
+    public static void create() throws IOException
+    {
+        new UsersAndBooks( "create.properties" ).createGraph();
+    }
+
+    @MainMethod.Entry
+    public static void resume() throws IOException
+    {
+        new UsersAndBooks( "create.properties" ).resumeGraph();
+    }
+
+    /**
+     * @return whether the directory holds a dataset whose build ran to the
+     *         end.
+     */
+    public static boolean isBuilt( String storeDir )
+    {
+        try
+        {
+            return DONE.equals( DatasetCheckpoint.load( storeDir ).get( "phase", "" ) );
+        }
+        catch ( IOException noStore )
+        {
+            return false;
+        }
+    }
+
+    @MainMethod.Entry
+    public static void extend() throws IOException
+    {
+        new UsersAndBooks( "create.properties" ).extendGraph();
+    }
+
+    @MainMethod.Entry
+    public static void traverse() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).traverseGraph();
+    }
+
+    @MainMethod.Entry
+    public static void scale() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).scaleGraph();
+    }
+
+    @MainMethod.Entry
+    public static void recommend() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).recommendations();
+    }
+
+    @MainMethod.Entry
+    public static void mixed() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).mixedWorkload();
+    }
+
+    @MainMethod.Entry
+    public static void startup() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).startupMatrix();
+    }
+
+    @MainMethod.Entry
+    public static void restart() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).restartGraph();
+    }
+
+    @MainMethod.Entry
+    public static void crash() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).crashGraph();
+    }
+
+    @MainMethod.Entry
+    public static void load() throws IOException
+    {
+        new UsersAndBooks( "traverse.properties" ).loadCurve();
+    }
+
+    private static final int MILLION = 1000000;
+    private static final String RELATIONSHIP_MAPPED_MEMORY = "neostore.relationshipstore.db.mapped_memory";
+
+    private static double expectedValue( int min, int max )
+    {
+        int sum = 0;
+        for ( int number = min; number < max; number++ )
+        {
+            sum += number;
+        }
+        return ( (double) sum ) / ( (double) ( max - min ) );
+    }
+
+    private enum Execution
+    {
+        MIN,
+        MAX,
+        EXPECTED,
+    }
+
+    /**
+     * How the relationships of the books are laid out in the relationship
+     * store. Since the batch inserter hands out relationship ids in insertion
+     * order this decides how close together in the store the relationships
+     * of any one book end up.
+     */
+    private enum Layout
+    {
+        /**
+         * All relationships of a book are inserted together, with the
+         * relationship from the reference node first. This is the best case
+         * for traversing the books.
+         */
+        CLUSTERED
+        {
+            @Override
+            int referenceOffset( int numUsers, Random random )
+            {
+                return 0;
+            }
+
+            @Override
+            int book( int book, int user, int numBooks, Random random )
+            {
+                return book;
+            }
+        },
+        /**
+         * Consecutive relationships go to consecutive books, and the
+         * relationship from the reference node is placed at a random position
+         * among them.
+         */
+        RANDOM_OFFSET
+        {
+            @Override
+            int referenceOffset( int numUsers, Random random )
+            {
+                return random.nextInt( numUsers );
+            }
+
+            @Override
+            int book( int book, int user, int numBooks, Random random )
+            {
+                return ( book + user ) % numBooks;
+            }
+        },
+        /**
+         * Consecutive relationships go to consecutive books, with the
+         * relationship from the reference node first.
+         */
+        INTERLEAVED
+        {
+            @Override
+            int referenceOffset( int numUsers, Random random )
+            {
+                return 0;
+            }
+
+            @Override
+            int book( int book, int user, int numBooks, Random random )
+            {
+                return ( book + user ) % numBooks;
+            }
+        },
+        /**
+         * The favorites of all books are inserted in a random order,
+         * scattering the relationships of each book over the entire store.
+         * Every book keeps its users, only the order changes, which the
+         * segment decides with {@link Segment#shuffled(long)}.
+         */
+        SHUFFLED
+        {
+            @Override
+            int referenceOffset( int numUsers, Random random )
+            {
+                return random.nextInt( numUsers );
+            }
+
+            @Override
+            int book( int book, int user, int numBooks, Random random )
+            {
+                return book;
+            }
+        };
+
+        abstract int referenceOffset( int numUsers, Random random );
+
+        abstract int book( int book, int user, int numBooks, Random random );
+    }
+
+    /**
+     * How the users are distributed over the books.
+     */
+    private enum Degrees
+    {
+        /**
+         * Every book is the favorite of the same number of users.
+         */
+        UNIFORM,
+        /**
+         * The number of users of the book of rank r is proportional to
+         * 1/r^zipfExponent, as in a real catalogue where a few bestsellers
+         * are the favorites of a large share of the users. Mixing the
+         * targets as the interleaving layouts do would flatten the
+         * distribution, so with those the users of a book are inserted
+         * together and the layout only decides where the relationship from
+         * the reference node goes. {@code SHUFFLED} keeps the degrees and
+         * shuffles as usual.
+         */
+        ZIPF,
+    }
+
+    private enum TraversalMode
+    {
+        /**
+         * Nested iterators wrapping the relationships of each book, one
+         * {@link Node} per user.
+         */
+        ITERATOR,
+        /**
+         * A loop over the relationships of each book calling a visitor, with
+         * no wrapper objects per relationship.
+         */
+        VISITOR,
+    }
+
+    /**
+     * How the database was shut down before a {@code restart}.
+     */
+    private enum Shutdown
+    {
+        /**
+         * With {@link GraphDatabaseService#shutdown()}, which flushes the
+         * store, so the next start has nothing to recover.
+         */
+        CLEAN( 0 ),
+        /**
+         * By halting the JVM without running the shutdown hooks, as a
+         * {@code kill -9} would, so the next start has to recover the
+         * transactions from the logical log.
+         */
+        KILL( 137 );
+
+        final int exitCode;
+
+        private Shutdown( int exitCode )
+        {
+            this.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * The request issued by the {@code load} generator.
+     */
+    private enum Request
+    {
+        /**
+         * Expand all favorites of a random book.
+         */
+        EXPAND_BOOK,
+        /**
+         * Find the top {@code topK} co-favorites of a random user, as the
+         * {@code recommend} queries do.
+         */
+        CO_FAVORITES,
+    }
+
+    /**
+     * What the {@code load} requests run on.
+     */
+    private enum LoadExecutor
+    {
+        /**
+         * A pool of {@code loadThreads} threads, queueing the requests that
+         * arrive while all of them are busy.
+         */
+        FIXED,
+        /**
+         * A new thread for every request that arrives while all existing
+         * threads are busy, so requests never queue for a thread.
+         */
+        CACHED,
+    }
+
+    /**
+     * The state of one thread running {@code load} requests.
+     */
+    private final class LoadState
+    {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final LatencyHistogram failed = new LatencyHistogram();
+        final LongIntCounts counts = new LongIntCounts( 1024 );
+        final LongIntCounts own = new LongIntCounts( 16 );
+        final long[] books = new long[topK];
+        final int[] bookCounts = new int[topK];
+        long completed, visited;
+    }
+
+    private interface FavoriteVisitor
+    {
+        void visitFavorite( Relationship favorite );
+    }
+
+    private static final class Counter implements FavoriteVisitor
+    {
+        long count;
+
+        public void visitFavorite( Relationship favorite )
+        {
+            count++;
+        }
+    }
+
+    private final Random random = new Random();
+    private final RelationshipType FAVORITE = DynamicRelationshipType.withName( "FAVORITE" );
+    private final long numBooks;
+    private final long numUsers;
+    private final int favoritesPerUser;
+    private final int numTraversals;
+    private final int maxTraversals;
+    private final Layout layout;
+    private final Degrees degrees;
+    private final double zipfExponent;
+    private final long seed;
+    private final boolean addNodeLabels;
+    private final int parallelism;
+    private final TraversalMode traversalMode;
+    private final int generatorThreads;
+    private final int pipelineCapacity;
+    private final int readers;
+    private final int writers;
+    private final int workloadSeconds;
+    private final int writeBatch;
+    private final int writeBacklog;
+    private final int maxRetries;
+    private final int numQueries;
+    private final int topK;
+    private final int checkpointSeconds;
+    private final int extendBooks;
+    private final int extendUsers;
+    private final Request requestType;
+    private final List<String> requestRates;
+    private final LoadExecutor loadExecutor;
+    private final int loadThreads;
+    private final List<String> mappedMemorySizes;
+    private final String mappedMemory;
+    private final Shutdown shutdown;
+    private final int restartWrites;
+    private final int sampleInterval;
+    private final List<String> jvmOptions;
+    private final File startupOutput;
+    private final List<String> dropCachesCommand;
+    private long nextCheckpoint;
+
+    private UsersAndBooks( String neo4j_config_file )
+    {
+        super( neo4j_config_file );
+        long BOOKS = longProperty( "numBooks", 1L * MILLION );
+        long USERS = longProperty( "numUsers", 100L * MILLION );
+        int MIN_FAVORITES = intProperty( "minFavorites", 100 );
+        int MAX_FAVORITES = intProperty( "maxFavorites", 1000 );
+        double FAVORITES;
+        Execution kind = enumProperty( Execution.class, "kind",
+                Execution.EXPECTED );
+        switch ( kind )
+        {
+        case MIN:
+            FAVORITES = MIN_FAVORITES;
+            break;
+        case MAX:
+            FAVORITES = MAX_FAVORITES;
+            break;
+        case EXPECTED:
+        default:
+            FAVORITES = expectedValue( MIN_FAVORITES, MAX_FAVORITES );
+        }
+        double FAVORITED = USERS * FAVORITES / BOOKS;
+        this.numBooks = (long) Math.ceil( FAVORITES );
+        this.numUsers = (long) Math.ceil( FAVORITED );
+        this.favoritesPerUser = intProperty( "favoritesPerUser", 1 );
+        this.numTraversals = intProperty( "numTraversals", 2 );
+        this.maxTraversals = intProperty( "maxTraversals", 50 );
+        this.layout = enumProperty( Layout.class, "layout",
+                booleanProperty( "optimistic", false ) ? Layout.CLUSTERED : Layout.RANDOM_OFFSET );
+        this.degrees = enumProperty( Degrees.class, "degrees", Degrees.UNIFORM );
+        this.zipfExponent = degrees == Degrees.ZIPF ? doubleProperty( "zipfExponent", 1.0 ) : 0;
+        this.seed = longProperty( "seed", new Random().nextLong() );
+        this.addNodeLabels = booleanProperty( "addNodeLabels", false );
+        this.parallelism = intProperty( "parallelism", 1 );
+        this.traversalMode = enumProperty( TraversalMode.class, "traversalMode",
+                TraversalMode.ITERATOR );
+        this.generatorThreads = intProperty( "generatorThreads", 0 );
+        this.pipelineCapacity = intProperty( "pipelineCapacity", 2 * Math.max( 1, generatorThreads ) );
+        this.readers = intProperty( "readers", 1 );
+        this.writers = intProperty( "writers", 1 );
+        this.workloadSeconds = intProperty( "workloadSeconds", 60 );
+        this.writeBatch = intProperty( "writeBatch", 1 );
+        this.writeBacklog = intProperty( "writeBacklog", 1000 );
+        this.maxRetries = intProperty( "maxRetries", 5 );
+        this.numQueries = intProperty( "numQueries", 10000 );
+        this.topK = intProperty( "topK", 10 );
+        this.checkpointSeconds = intProperty( "checkpointSeconds", 600 );
+        this.extendBooks = intProperty( "extendBooks", 0 );
+        this.extendUsers = intProperty( "extendUsers", 0 );
+        this.requestType = enumProperty( Request.class, "requestType", Request.EXPAND_BOOK );
+        this.requestRates = BenchmarkMatrix.split( stringProperty( "requestRates",
+                "100,200,500,1000,2000,5000,10000" ), "," );
+        this.loadExecutor = enumProperty( LoadExecutor.class, "loadExecutor", LoadExecutor.FIXED );
+        this.loadThreads = intProperty( "loadThreads", 16 );
+        this.mappedMemorySizes = BenchmarkMatrix.split( stringProperty( "mappedMemorySizes",
+                "100M,500M,1000M" ), "," );
+        this.mappedMemory = stringProperty( "mappedMemory", "" );
+        this.shutdown = enumProperty( Shutdown.class, "shutdown", Shutdown.CLEAN );
+        this.restartWrites = intProperty( "restartWrites", 100 );
+        this.sampleInterval = intProperty( "sampleInterval", 100 );
+        this.jvmOptions = BenchmarkMatrix.split( stringProperty( "jvmOptions", "-server" ), " " );
+        this.startupOutput = new File( stringProperty( "startupOutput", "target/startup" ) );
+        this.dropCachesCommand = BenchmarkMatrix.split( stringProperty( "dropCachesCommand", "" ),
+                " " );
+        // Print out statistics about the started instance
+        System.out.println( this );
+    }
+
+    @Override
+    protected void buildStringRepresentation( StringBuilder result )
+    {
+        result.append( "\nUsing " );
+        result.append( enumProperty( Execution.class, "kind",
+                Execution.EXPECTED ).name() );
+        result.append( " type graph with " );
+        result.append( layout.name() );
+        result.append( " layout and seed " );
+        result.append( seed );
+        result.append( ".\n" );
+        result.append( "Each user has " );
+        result.append( numBooks );
+        result.append( " favorite books and each book is the favorite of " );
+        result.append( numUsers );
+        result.append( " users" );
+        if ( degrees == Degrees.ZIPF )
+        {
+            result.append( " on average, Zipf distributed with exponent " );
+            result.append( zipfExponent );
+        }
+        result.append( ".\n" );
+        if ( favoritesPerUser > 1 )
+        {
+            result.append( "The favorites are shared by users with " );
+            result.append( favoritesPerUser );
+            result.append( " favorites each on average.\n" );
+        }
+        if ( parallelism > 1 )
+        {
+            result.append( "Traversing with up to " );
+            result.append( parallelism );
+            result.append( " threads.\n" );
+        }
+    }
+
+    private void traverseGraph()
+    {
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+        try
+        {
+            SteadyState steadyState = steadyState();
+            List<ResultRecord> runs = new ArrayList<ResultRecord>();
+            int maxRuns = steadyState == null ? numTraversals : maxTraversals;
+            for ( int i = 0; i < maxRuns; i++ )
+            {
+                Map<String, Long> before = IntrospectionAttribute.sampleAll();
+                ResultRecord result = parallelism > 1 ? traverse( graphdb, parallelism )
+                        : traverse( graphdb );
+                ioPerRelationship( introspectionDeltas( result, before, parallelism > 1 ),
+                        (long) result.getDouble( "metrics.relationships" ) );
+                if ( steadyState == null )
+                {
+                    report( result );
+                }
+                else
+                {
+                    runs.add( result );
+                    if ( steadyState.add( result.getDouble( "throughput" ) ) )
+                    {
+                        break;
+                    }
+                }
+            }
+            if ( steadyState != null )
+            {
+                steadyState.printSummary( "relationships/ms" );
+                for ( int i = 0; i < runs.size(); i++ )
+                {
+                    report( runs.get( i ).set( "params", "phase", steadyState.phase( i ) ) );
+                }
+            }
+        }
+        finally
+        {
+            graphdb.shutdown();
+        }
+    }
+
+    private void scaleGraph()
+    {
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for ( int threads = 1; threads < parallelism; threads *= 2 )
+        {
+            threadCounts.add( threads );
+        }
+        threadCounts.add( Math.max( 1, parallelism ) );
+        double[] speed = new double[threadCounts.size()];
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+        try
+        {
+            for ( int i = 0; i < speed.length; i++ )
+            {
+                for ( int run = 0; run < numTraversals; run++ )
+                {
+                    Map<String, Long> before = IntrospectionAttribute.sampleAll();
+                    ResultRecord result = traverse( graphdb, threadCounts.get( i ) );
+                    report( ioPerRelationship( introspectionDeltas( result, before, true ),
+                            (long) result.getDouble( "metrics.relationships" ) ) );
+                    speed[i] = Math.max( speed[i], result.getDouble( "throughput" ) );
+                }
+            }
+        }
+        finally
+        {
+            graphdb.shutdown();
+        }
+        System.out.println( "threads\trels/ms\trels/ms/thread\tspeedup" );
+        for ( int i = 0; i < speed.length; i++ )
+        {
+            int threads = threadCounts.get( i );
+            System.out.printf( "%d\t%.3f\t%.3f\t%.2f%n", threads, speed[i], speed[i] / threads,
+                    speed[i] / speed[0] );
+        }
+    }
+
+    /**
+     * Run "users who favorited these books also favorited" queries from
+     * sampled start users on {@code parallelism} threads, each query counting
+     * the other favorites of every user sharing a favorite with the start user
+     * and keeping the {@code topK} books.
+     */
+    private void recommendations()
+    {
+        final GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(),
+                neo4jConfiguration );
+        int threads = Math.max( 1, parallelism );
+        ExecutorService workers = Executors.newFixedThreadPool( threads );
+        final ProgressReporter progress = progress( "queries", numQueries );
+        try
+        {
+            final long[] starts = new long[numQueries];
+            Random sample = new Random( seed );
+            long users = userNodes( true );
+            for ( int i = 0; i < numQueries; i++ )
+            {
+                starts[i] = userId( (long) ( sample.nextDouble() * users ) );
+            }
+            final long catalogue = graphdb.getReferenceNode().getId();
+            System.out.println( "Running " + numQueries + " top " + topK
+                                + " recommendation queries on " + threads + " threads" );
+            final AtomicInteger nextQuery = new AtomicInteger();
+            final AtomicLong recommended = new AtomicLong();
+            final LatencyHistogram[] queryLatency = new LatencyHistogram[threads];
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            long time = System.currentTimeMillis();
+            for ( int i = 0; i < threads; i++ )
+            {
+                final LatencyHistogram latency = queryLatency[i] = new LatencyHistogram();
+                results.add( workers.submit( new Callable<Long>()
+                {
+                    public Long call()
+                    {
+                        LongIntCounts counts = new LongIntCounts( 1024 );
+                        LongIntCounts own = new LongIntCounts( 16 );
+                        long[] books = new long[topK];
+                        int[] bookCounts = new int[topK];
+                        long visited = 0;
+                        for ( int query; ( query = nextQuery.getAndIncrement() ) < starts.length; )
+                        {
+                            long queryStart = System.nanoTime();
+                            visited += coFavorites( graphdb.getNodeById( starts[query] ), catalogue,
+                                    counts, own );
+                            recommended.addAndGet( counts.top( books, bookCounts ) );
+                            latency.record( System.nanoTime() - queryStart );
+                            progress.add( 1 );
+                        }
+                        return visited;
+                    }
+                } ) );
+            }
+            long visited = 0;
+            for ( int i = 0; i < threads; i++ )
+            {
+                visited += results.get( i ).get();
+                if ( i > 0 )
+                {
+                    queryLatency[0].add( queryLatency[i] );
+                }
+            }
+            time = System.currentTimeMillis() - time;
+            double speed = numQueries * 1000.0 / time;
+            System.out.printf( "Ran %s queries in %.3f seconds, %.1f queries per second, "
+                               + "%s relationships visited, %.1f books recommended per query.%n",
+                    numQueries, time / 1000.0, speed, visited, recommended.get()
+                                                               / (double) numQueries );
+            System.out.println( "Query latency " + queryLatency[0] );
+            report( result( "recommend", "queries" ).set( "params", "threads", threads ).throughput(
+                    speed, "queries/s" ).latency( queryLatency[0] ).set( "metrics",
+                    "relationshipsPerQuery", visited / (double) numQueries ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Queries interrupted", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Query failed", e.getCause() );
+        }
+        finally
+        {
+            progress.stop();
+            workers.shutdownNow();
+            graphdb.shutdown();
+        }
+    }
+
+    /**
+     * Count the favorites of the users sharing a favorite with the given user,
+     * leaving out the favorites of the user itself and the catalogue node,
+     * which favorites every book.
+     *
+     * @return the number of relationships visited.
+     */
+    private long coFavorites( Node user, long catalogue, LongIntCounts counts, LongIntCounts own )
+    {
+        counts.clear();
+        own.clear();
+        long visited = 0;
+        for ( Relationship favorite : user.getRelationships( FAVORITE, Direction.OUTGOING ) )
+        {
+            own.increment( favorite.getEndNode().getId() );
+        }
+        for ( Relationship favorite : user.getRelationships( FAVORITE, Direction.OUTGOING ) )
+        {
+            for ( Relationship shared : favorite.getEndNode().getRelationships( FAVORITE,
+                    Direction.INCOMING ) )
+            {
+                visited++;
+                Node other = shared.getStartNode();
+                long otherId = other.getId();
+                if ( otherId == user.getId() || otherId == catalogue )
+                {
+                    continue;
+                }
+                for ( Relationship coFavorite : other.getRelationships( FAVORITE, Direction.OUTGOING ) )
+                {
+                    visited++;
+                    long book = coFavorite.getEndNode().getId();
+                    if ( !own.contains( book ) )
+                    {
+                        counts.increment( book );
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Run reader threads traversing the graph with the
+     * {@code traversalMode} while writer threads add and remove favorites in
+     * transactions, for a fixed amount of time.
+     */
+    private void mixedWorkload()
+    {
+        if ( readers < 0 || writers < 0 || readers + writers == 0 )
+        {
+            throw new IllegalArgumentException( "Need at least one reader or writer, not "
+                                                + readers + " readers and " + writers + " writers" );
+        }
+        final GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(),
+                neo4jConfiguration );
+        ExecutorService workers = Executors.newFixedThreadPool( readers + writers );
+        try
+        {
+            System.out.println( "Running " + readers + " readers using "
+                                + traversalMode.name().toLowerCase() + " and " + writers
+                                + " writers for " + workloadSeconds + " seconds" );
+            final long deadline = System.currentTimeMillis() + workloadSeconds * 1000L;
+            final Node start = graphdb.getReferenceNode();
+            DegreeBuckets[] readLatency = new DegreeBuckets[readers];
+            List<Future<Long>> reads = new ArrayList<Future<Long>>();
+            for ( int i = 0; i < readers; i++ )
+            {
+                final DegreeBuckets latency = readLatency[i] = new DegreeBuckets();
+                reads.add( workers.submit( new Callable<Long>()
+                {
+                    public Long call()
+                    {
+                        long count = 0;
+                        while ( System.currentTimeMillis() < deadline )
+                        {
+                            Transaction tx = graphdb.beginTx();
+                            try
+                            {
+                                if ( traversalMode == TraversalMode.VISITOR )
+                                {
+                                    count += visitUntil( start, latency, deadline );
+                                }
+                                else
+                                {
+                                    for ( Node user : iterator( start, latency ) )
+                                    {
+                                        if ( ++count % 1024 == 0
+                                             && System.currentTimeMillis() >= deadline )
+                                        {
+                                            break;
+                                        }
+                                    }
+                                }
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                        return count;
+                    }
+                } ) );
+            }
+            List<Future<FavoriteWriter>> writes = new ArrayList<Future<FavoriteWriter>>();
+            for ( int i = 0; i < writers; i++ )
+            {
+                writes.add( workers.submit( new FavoriteWriter( graphdb, deadline, seed + i ) ) );
+            }
+
+            long read = 0;
+            for ( int i = 0; i < readers; i++ )
+            {
+                read += reads.get( i ).get();
+                if ( i > 0 )
+                {
+                    readLatency[0].add( readLatency[i] );
+                }
+            }
+            LatencyHistogram commitLatency = new LatencyHistogram();
+            long commits = 0, operations = 0, deadlocks = 0, retries = 0, failures = 0;
+            long leftBehind = 0;
+            for ( Future<FavoriteWriter> write : writes )
+            {
+                FavoriteWriter writer = write.get();
+                commitLatency.add( writer.latency );
+                commits += writer.commits;
+                operations += writer.operations;
+                deadlocks += writer.deadlocks;
+                retries += writer.retries;
+                failures += writer.failures;
+                leftBehind += writer.leftBehind;
+            }
+            long time = workloadSeconds * 1000L;
+
+            System.out.printf( "Read %s users, %.3f users per millisecond.%n", read,
+                    read / (double) time );
+            System.out.println( "Book expansion latency "
+                                + ( readers > 0 ? readLatency[0].all() : new LatencyHistogram() ) );
+            System.out.printf( "Committed %s transactions with %s operations, %.3f commits "
+                               + "per millisecond.%n", commits, operations, commits / (double) time );
+            System.out.println( "Commit latency " + commitLatency );
+            System.out.printf( "%s deadlocks, %s retries, %s transactions given up after %s "
+                               + "retries.%n", deadlocks, retries, failures, maxRetries );
+            if ( leftBehind > 0 )
+            {
+                System.out.println( leftBehind + " favorites added by the writers could not be "
+                                    + "removed again and are left in the store." );
+            }
+            if ( readers > 0 )
+            {
+                report( result( "mixed", "reads" ).throughput( read / (double) time, "users/ms" ).latency(
+                        readLatency[0].all() ) );
+            }
+            if ( writers > 0 )
+            {
+                report( result( "mixed", "commits" ).throughput( commits / (double) time,
+                        "commits/ms" ).latency( commitLatency ).set( "metrics", "operations",
+                        operations ).set( "metrics", "deadlocks", deadlocks ).set( "metrics",
+                        "retries", retries ).set( "metrics", "failures", failures ).set(
+                        "metrics", "leftBehind", leftBehind ) );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Workload interrupted", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Workload failed", e.getCause() );
+        }
+        finally
+        {
+            workers.shutdownNow();
+            graphdb.shutdown();
+        }
+    }
+
+    /**
+     * Adds favorites between random users and books, {@code writeBatch} per
+     * transaction, and once it has {@code writeBacklog} favorites of its own
+     * removes the oldest ones again, keeping the size of the graph stable.
+     * Transactions that deadlock are retried up to {@code maxRetries} times.
+     * When the time is up the remaining favorites of the writer are removed,
+     * leaving the store as it was created, except for those in transactions
+     * that keep deadlocking, which are counted as left behind.
+     */
+    private final class FavoriteWriter implements Callable<FavoriteWriter>
+    {
+        private final GraphDatabaseService graphdb;
+        private final long deadline;
+        private final Random random;
+        private final long[] created = new long[writeBacklog + writeBatch];
+        private int oldest, size;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long commits, operations, deadlocks, retries, failures, leftBehind;
+
+        FavoriteWriter( GraphDatabaseService graphdb, long deadline, long seed )
+        {
+            this.graphdb = graphdb;
+            this.deadline = deadline;
+            this.random = new Random( seed );
+        }
+
+        public FavoriteWriter call()
+        {
+            long[] users = new long[writeBatch], books = new long[writeBatch];
+            long[] ids = new long[writeBatch];
+            long userNodes = userNodes( false );
+            boolean draining = false;
+            while ( !draining || size > 0 )
+            {
+                draining = draining || System.currentTimeMillis() >= deadline;
+                boolean delete = draining || size >= writeBacklog;
+                int count = delete ? Math.min( writeBatch, size ) : writeBatch;
+                for ( int i = 0; !delete && i < count; i++ )
+                {
+                    users[i] = userId( (long) ( random.nextDouble() * userNodes ) );
+                    books[i] = bookId( (long) ( random.nextDouble() * numBooks ) );
+                }
+                for ( int attempt = 0;; attempt++ )
+                {
+                    long start = System.nanoTime();
+                    try
+                    {
+                        Transaction tx = graphdb.beginTx();
+                        try
+                        {
+                            for ( int i = 0; i < count; i++ )
+                            {
+                                if ( delete )
+                                {
+                                    graphdb.getRelationshipById(
+                                            created[( oldest + i ) % created.length] ).delete();
+                                }
+                                else
+                                {
+                                    ids[i] = graphdb.getNodeById( users[i] ).createRelationshipTo(
+                                            graphdb.getNodeById( books[i] ), FAVORITE ).getId();
+                                }
+                            }
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                    }
+                    catch ( DeadlockDetectedException e )
+                    {
+                        deadlocks++;
+                        if ( attempt < maxRetries )
+                        {
+                            retries++;
+                            continue;
+                        }
+                        failures++;
+                        if ( draining )
+                        {
+                            // give up on these rather than retry forever
+                            oldest = ( oldest + count ) % created.length;
+                            size -= count;
+                            leftBehind += count;
+                        }
+                        break;
+                    }
+                    if ( !draining )
+                    {
+                        latency.record( System.nanoTime() - start );
+                        commits++;
+                        operations += count;
+                    }
+                    for ( int i = 0; i < count; i++ )
+                    {
+                        if ( delete )
+                        {
+                            oldest = ( oldest + 1 ) % created.length;
+                            size--;
+                        }
+                        else
+                        {
+                            created[( oldest + size++ ) % created.length] = ids[i];
+                        }
+                    }
+                    break;
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Issue requests at each of the {@code requestRates} per second for
+     * {@code workloadSeconds}, regardless of how long the requests take, and
+     * print the latency at every rate. The latency of a request is measured
+     * from when it should have started according to the rate, not from when
+     * it did, so that time spent queueing behind slow requests is counted
+     * rather than hidden by the generator waiting for them. The curve stops
+     * at the first rate the store cannot keep up with, beyond that the
+     * latency only depends on how long the run is.
+     */
+    private void loadCurve()
+    {
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+        List<ResultRecord> curve = new ArrayList<ResultRecord>();
+        try
+        {
+            long catalogue = graphdb.getReferenceNode().getId();
+            for ( String rate : requestRates )
+            {
+                ResultRecord result = openLoop( graphdb, catalogue, Double.parseDouble( rate ) );
+                report( result );
+                curve.add( result );
+                if ( result.getDouble( "throughput" ) < 0.9 * Double.parseDouble( rate ) )
+                {
+                    System.out.println( "Saturated at " + rate + " requests per second." );
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            graphdb.shutdown();
+        }
+        System.out.println( "rate\tachieved\tp50 ms\tp99 ms\tp99.9 ms\tmax ms\tservice p99 ms" );
+        for ( ResultRecord result : curve )
+        {
+            System.out.printf( "%s\t%.1f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f%n",
+                    result.get( "params.rate" ), result.getDouble( "throughput" ),
+                    result.getDouble( "latency.p50" ) / 1000000.0,
+                    result.getDouble( "latency.p99" ) / 1000000.0,
+                    result.getDouble( "latency.p99_9" ) / 1000000.0,
+                    result.getDouble( "latency.max" ) / 1000000.0,
+                    result.getDouble( "metrics.serviceP99" ) / 1000000.0 );
+        }
+    }
+
+    /**
+     * Issue requests at a fixed rate from this thread to the executor.
+     *
+     * @return the result at this rate, not yet reported.
+     */
+    private ResultRecord openLoop( final GraphDatabaseService graphdb, final long catalogue,
+            double rate )
+    {
+        ExecutorService executor = loadExecutor == LoadExecutor.FIXED ? Executors.newFixedThreadPool(
+                loadThreads ) : Executors.newCachedThreadPool();
+        final List<LoadState> states = new ArrayList<LoadState>();
+        final ThreadLocal<LoadState> threadState = new ThreadLocal<LoadState>()
+        {
+            @Override
+            protected LoadState initialValue()
+            {
+                LoadState state = new LoadState();
+                synchronized ( states )
+                {
+                    states.add( state );
+                }
+                return state;
+            }
+        };
+        long requests = (long) ( rate * workloadSeconds );
+        System.out.printf( "Issuing %s %s requests at %s per second on a %s executor%n", requests,
+                requestType.name().toLowerCase(), rate, loadExecutor.name().toLowerCase() );
+        Random sample = new Random( seed );
+        long users = userNodes( requestType == Request.CO_FAVORITES );
+        final AtomicReference<RuntimeException> firstFailure = new AtomicReference<RuntimeException>();
+        long maxLag = 0;
+        long start = System.nanoTime();
+        try
+        {
+            for ( long i = 0; i < requests; i++ )
+            {
+                final long intended = start + (long) ( i * 1000000000.0 / rate );
+                final long target = requestType == Request.EXPAND_BOOK ? bookId( (long) ( sample.nextDouble()
+                        * numBooks ) ) : userId( (long) ( sample.nextDouble() * users ) );
+                long now;
+                while ( ( now = System.nanoTime() ) < intended )
+                {
+                    LockSupport.parkNanos( intended - now );
+                }
+                maxLag = Math.max( maxLag, now - intended );
+                executor.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        LoadState state = threadState.get();
+                        long begin = System.nanoTime();
+                        try
+                        {
+                            state.visited += request( graphdb, target, catalogue, state );
+                        }
+                        catch ( RuntimeException e )
+                        {
+                            // failed requests are usually fast, keep them out of the latency
+                            state.failed.record( System.nanoTime() - intended );
+                            if ( firstFailure.compareAndSet( null, e ) )
+                            {
+                                System.out.println( "Request on node " + target + " failed:" );
+                                e.printStackTrace( System.out );
+                            }
+                            return;
+                        }
+                        long end = System.nanoTime();
+                        state.completed++;
+                        state.latency.record( end - intended );
+                        state.service.record( end - begin );
+                    }
+                } );
+            }
+            executor.shutdown();
+            while ( !executor.awaitTermination( 1, TimeUnit.SECONDS ) )
+            {
+                // wait for the requests still queued
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Load interrupted", e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        double seconds = ( System.nanoTime() - start ) / 1000000000.0;
+
+        LatencyHistogram latency = new LatencyHistogram(), service = new LatencyHistogram();
+        LatencyHistogram failed = new LatencyHistogram();
+        long completed = 0, visited = 0;
+        synchronized ( states )
+        {
+            for ( LoadState state : states )
+            {
+                latency.add( state.latency );
+                service.add( state.service );
+                failed.add( state.failed );
+                completed += state.completed;
+                visited += state.visited;
+            }
+        }
+        long failures = failed.count();
+        double achieved = completed / seconds;
+        System.out.printf( "Completed %s requests, %.1f per second, %s failed, %s threads, "
+                           + "generator up to %.3f ms late.%n", completed, achieved, failures,
+                states.size(), maxLag / 1000000.0 );
+        System.out.println( "Latency from intended start " + latency );
+        System.out.println( "Service time " + service );
+        if ( failures > 0 )
+        {
+            System.out.println( "Latency of failed requests " + failed );
+        }
+        return result( "load", "requests" ).set( "params", "rate", rate ).throughput( achieved,
+                "requests/s" ).latency( latency ).set( "metrics", "serviceP50",
+                service.percentile( 50 ) ).set( "metrics", "serviceP99", service.percentile( 99 ) ).set(
+                "metrics", "relationshipsPerRequest", visited / (double) Math.max( 1, completed ) ).set(
+                "metrics", "failures", failures ).set( "metrics", "failedP99",
+                failed.percentile( 99 ) ).set( "metrics", "threads", states.size() ).set(
+                "metrics", "generatorLagMs", maxLag / 1000000.0 );
+    }
+
+    /**
+     * @return the number of relationships visited.
+     */
+    private long request( GraphDatabaseService graphdb, long target, long catalogue, LoadState state )
+    {
+        Node node = graphdb.getNodeById( target );
+        if ( requestType == Request.CO_FAVORITES )
+        {
+            long visited = coFavorites( node, catalogue, state.counts, state.own );
+            state.counts.top( state.books, state.bookCounts );
+            return visited;
+        }
+        long visited = 0;
+        for ( Relationship favorite : node.getRelationships( FAVORITE ) )
+        {
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Measure a {@code restart} for every size in {@code mappedMemorySizes}
+     * and both ways of shutting down, each in a fresh JVM so that nothing is
+     * loaded or compiled yet. Before every restart another JVM runs
+     * {@code crash} to leave the store in the state to start from. Unless a
+     * {@code dropCachesCommand} is given to run before every restart, such
+     * as {@code sudo drop-caches.sh} for a script running {@code sync} and
+     * writing 3 to {@code /proc/sys/vm/drop_caches}, the store files stay in
+     * the operating system page cache and the figures are for a warm cache.
+     */
+    private void startupMatrix() throws IOException
+    {
+        startupOutput.mkdirs();
+        CellRunner runner = new CellRunner( CellRunner.currentJava(), jvmOptions, startupOutput, 0 );
+        String pageCache = dropCachesCommand.isEmpty() ? "warm" : "dropped";
+        System.out.println( dropCachesCommand.isEmpty() ? "The page cache is not dropped, the "
+                                                          + "restarts run with a warm cache."
+                : "Dropping the page cache with " + dropCachesCommand + " before every restart." );
+        List<ResultRecord> restarts = new ArrayList<ResultRecord>();
+        for ( String size : mappedMemorySizes )
+        {
+            for ( Shutdown mode : Shutdown.values() )
+            {
+                String cell = "mapped=" + size + "-shutdown=" + mode.name().toLowerCase();
+                String crash = cell + "-crash";
+                int exitCode = CellRunner.fork( runner.command( crash, forkOptions( size, mode ),
+                        null, null, getClass().getSimpleName(), "crash",
+                        Collections.<String>emptyList() ), runner.log( crash ) );
+                if ( exitCode != mode.exitCode )
+                {
+                    throw new IllegalStateException( "Preparing " + cell + " exited with " + exitCode
+                                                     + ", see " + runner.log( crash ) );
+                }
+                if ( !dropCachesCommand.isEmpty() )
+                {
+                    String drop = cell + "-drop";
+                    exitCode = CellRunner.fork( dropCachesCommand, runner.log( drop ) );
+                    if ( exitCode != 0 )
+                    {
+                        throw new IllegalStateException( "Dropping the page cache before " + cell
+                                                         + " exited with " + exitCode + ", see "
+                                                         + runner.log( drop ) );
+                    }
+                }
+                List<ResultRecord> records = runner.run( cell, forkOptions( size, mode ), null,
+                        getClass().getSimpleName(), "restart", Collections.<String>emptyList(), null );
+                if ( records == null )
+                {
+                    continue;
+                }
+                for ( ResultRecord record : records )
+                {
+                    report( record.set( "params", "pageCache", pageCache ) );
+                    restarts.add( record );
+                }
+            }
+        }
+        System.out.println( "mapped\tshutdown\tpage cache\topen ms\treference ms\tfirst book ms"
+                            + "\tsteady ms\trels/ms" );
+        for ( ResultRecord record : restarts )
+        {
+            System.out.printf( "%s\t%s\t%s\t%.1f\t%.1f\t%.1f\t%.1f\t%.3f%n",
+                    record.get( "params.mappedMemory" ), record.get( "params.shutdown" ), pageCache,
+                    record.getDouble( "metrics.openMs" ), record.getDouble( "metrics.referenceNodeMs" ),
+                    record.getDouble( "metrics.firstBookMs" ),
+                    record.getDouble( "metrics.steadyStateMs" ), record.getDouble( "throughput" ) );
+        }
+    }
+
+    /**
+     * @return the settings of this JVM for the example and the configuration,
+     *         with the mapped memory and shutdown of a startup cell.
+     */
+    private List<String> forkOptions( String size, Shutdown mode )
+    {
+        String prefix = getClass().getSimpleName() + ".";
+        List<String> options = new ArrayList<String>();
+        for ( String key : System.getProperties().stringPropertyNames() )
+        {
+            if ( key.startsWith( prefix ) || key.startsWith( "ConfiguredExample." ) )
+            {
+                options.add( "-D" + key + "=" + System.getProperty( key ) );
+            }
+        }
+        // the last definition of a property wins
+        options.add( "-D" + prefix + "mappedMemory=" + size );
+        options.add( "-D" + prefix + "shutdown=" + mode.name() );
+        options.add( "-D" + prefix + "renderProgression=false" );
+        return options;
+    }
+
+    /**
+     * Time the phases of starting the database in this JVM: opening the
+     * store, including recovery, getting the reference node, expanding the
+     * first book, and expanding books until the throughput over a
+     * {@code sampleInterval} reaches 90% of the steady state, the average
+     * over the second half of {@code workloadSeconds}. All times are from the
+     * start of opening the store.
+     */
+    private void restartGraph()
+    {
+        Map<String, String> config = new HashMap<String, String>( neo4jConfiguration );
+        if ( mappedMemory.length() > 0 )
+        {
+            config.put( RELATIONSHIP_MAPPED_MEMORY, mappedMemory );
+        }
+        long start = System.nanoTime();
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(), config );
+        try
+        {
+            long open = System.nanoTime();
+            Node reference = graphdb.getReferenceNode();
+            long referenceNode = System.nanoTime();
+            Counter counter = new Counter();
+            Iterator<Relationship> books = reference.getRelationships( FAVORITE ).iterator();
+            int firstBook = books.hasNext() ? visitBook( reference, books.next(), counter ) + 1 : 0;
+            long expanded = System.nanoTime();
+
+            List<Double> speeds = new ArrayList<Double>();
+            List<Long> times = new ArrayList<Long>();
+            long deadline = expanded + workloadSeconds * 1000000000L;
+            long intervalStart = expanded, relationships = 0;
+            for ( long now = expanded; now < deadline && firstBook > 0; )
+            {
+                Transaction tx = graphdb.beginTx();
+                try
+                {
+                    for ( Relationship book : reference.getRelationships( FAVORITE ) )
+                    {
+                        relationships += visitBook( reference, book, counter ) + 1;
+                        now = System.nanoTime();
+                        if ( now - intervalStart >= sampleInterval * 1000000L )
+                        {
+                            speeds.add( relationships / ( ( now - intervalStart ) / 1000000.0 ) );
+                            times.add( now - start );
+                            intervalStart = now;
+                            relationships = 0;
+                            if ( now >= deadline )
+                            {
+                                break;
+                            }
+                        }
+                    }
+                }
+                finally
+                {
+                    tx.finish();
+                }
+            }
+
+            double steady = 0;
+            for ( int i = speeds.size() / 2; i < speeds.size(); i++ )
+            {
+                steady += speeds.get( i ) / ( speeds.size() - speeds.size() / 2 );
+            }
+            double steadyStateMs = Double.NaN;
+            for ( int i = 0; i < speeds.size(); i++ )
+            {
+                if ( speeds.get( i ) >= 0.9 * steady )
+                {
+                    steadyStateMs = times.get( i ) / 1000000.0;
+                    break;
+                }
+            }
+            double openMs = ( open - start ) / 1000000.0;
+            double referenceNodeMs = ( referenceNode - start ) / 1000000.0;
+            double firstBookMs = ( expanded - start ) / 1000000.0;
+            System.out.printf( "After a %s shutdown with %s mapped for relationships: store open "
+                               + "after %.3f ms, reference node after %.3f ms, first book (%s "
+                               + "relationships) after %.3f ms, 90%% of the steady %.3f "
+                               + "relationships/ms after %.3f ms.%n", shutdown.name().toLowerCase(),
+                    config.get( RELATIONSHIP_MAPPED_MEMORY ), openMs, referenceNodeMs, firstBook,
+                    firstBookMs, steady, steadyStateMs );
+            report( result( "restart", "relationships" ).throughput( steady, "relationships/ms" ).set(
+                    "params", "shutdown", shutdown.name() ).set( "params", "mappedMemory",
+                    config.get( RELATIONSHIP_MAPPED_MEMORY ) ).set( "metrics", "openMs", openMs ).set(
+                    "metrics", "referenceNodeMs", referenceNodeMs ).set( "metrics", "firstBookMs",
+                    firstBookMs ).set( "metrics", "firstBookRelationships", firstBook ).set(
+                    "metrics", "steadyStateMs", steadyStateMs ) );
+        }
+        finally
+        {
+            graphdb.shutdown();
+        }
+    }
+
+    /**
+     * Leave the store to be restarted from: commit {@code restartWrites}
+     * transactions adding {@code writeBatch} favorites each, and as many
+     * removing them again, so the data is the same but the logical log has
+     * something to recover, then shut down as {@code shutdown} says.
+     */
+    private void crashGraph()
+    {
+        GraphDatabaseService graphdb = new EmbeddedGraphDatabase( getStoreDir(), neo4jConfiguration );
+        long[] created = new long[writeBatch];
+        long users = userNodes( false );
+        for ( int i = 0; i < restartWrites; i++ )
+        {
+            Transaction tx = graphdb.beginTx();
+            try
+            {
+                for ( int j = 0; j < writeBatch; j++ )
+                {
+                    Node user = graphdb.getNodeById( userId( (long) ( random.nextDouble() * users ) ) );
+                    Node book = graphdb.getNodeById( bookId( (long) ( random.nextDouble() * numBooks ) ) );
+                    created[j] = user.createRelationshipTo( book, FAVORITE ).getId();
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            tx = graphdb.beginTx();
+            try
+            {
+                for ( int j = 0; j < writeBatch; j++ )
+                {
+                    graphdb.getRelationshipById( created[j] ).delete();
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+        System.out.printf( "Committed %s transactions, shutting down: %s%n", 2 * restartWrites,
+                shutdown.name().toLowerCase() );
+        if ( shutdown == Shutdown.KILL )
+        {
+            Runtime.getRuntime().halt( shutdown.exitCode );
+        }
+        graphdb.shutdown();
+    }
+
+    private long bookId( long book )
+    {
+        return 1 + book;
+    }
+
+    /**
+     * @return the number of favorites of users in the dataset as created,
+     *         which is the same regardless of the degree distribution, and
+     *         the number of users unless they have several favorites each.
+     */
+    private long totalUsers()
+    {
+        return numBooks * numUsers;
+    }
+
+    /**
+     * @return the number of user nodes of the dataset as created, from the
+     *         checkpoint of the store if there is one.
+     * @param coFavorites whether the caller needs users with several
+     *        favorites, and should warn if they only have one.
+     */
+    private long userNodes( boolean coFavorites )
+    {
+        Segment dataset;
+        try
+        {
+            dataset = Segment.load( DatasetCheckpoint.load( getStoreDir() ), 0 );
+        }
+        catch ( IOException noCheckpoint )
+        {
+            dataset = new Segment( bookId( 0 ), numBooks, userId( 0 ), numUsers, favoritesPerUser,
+                    true, layout, seed, zipfExponent );
+        }
+        if ( coFavorites && dataset.favoritesPerUser == 1 )
+        {
+            System.out.println( "Every user of " + getStoreDir() + " has a single favorite, so there "
+                                + "are no co-favorites. Create it with favoritesPerUser above 1." );
+        }
+        return dataset.userNodes();
+    }
+
+    private long userId( long user )
+    {
+        return 1 + numBooks + user;
+    }
+
+    private void createGraph() throws IOException
+    {
+        DatasetCheckpoint.requireEmpty( getStoreDir() );
+        DatasetCheckpoint checkpoint = DatasetCheckpoint.create( getStoreDir() );
+        new Segment( bookId( 0 ), numBooks, userId( 0 ), numUsers, favoritesPerUser, true, layout,
+                seed, zipfExponent ).save( checkpoint, 0 );
+        build( start( checkpoint.set( "segments", 1 ), 0 ) );
+    }
+
+    private void resumeGraph() throws IOException
+    {
+        DatasetCheckpoint checkpoint = DatasetCheckpoint.load( getStoreDir() );
+        if ( DONE.equals( checkpoint.get( "phase" ) ) )
+        {
+            System.out.println( "The build of " + getStoreDir() + " is already finished." );
+            return;
+        }
+        checkpoint.verifyHighIds();
+        System.out.println( "Resuming segment " + checkpoint.get( "segment" ) + " at "
+                            + checkpoint.get( "phase" ) + " " + checkpoint.get( "position" ) );
+        build( checkpoint );
+    }
+
+    /**
+     * Append segments to a finished dataset: {@code extendBooks} new books
+     * with {@code numUsers} new users each, and {@code extendUsers} new users
+     * for each of the books of the original dataset. New nodes get ids above
+     * all existing nodes, so nothing that is already in the store changes
+     * except the relationship chains of the books that gain users.
+     */
+    private void extendGraph() throws IOException
+    {
+        DatasetCheckpoint checkpoint = DatasetCheckpoint.load( getStoreDir() );
+        if ( !DONE.equals( checkpoint.get( "phase" ) ) )
+        {
+            throw new IllegalStateException( "The build of " + getStoreDir()
+                                             + " is not finished, resume it first." );
+        }
+        int segments = checkpoint.getInt( "segments" ), added = segments;
+        Segment original = Segment.load( checkpoint, 0 );
+        long nextNode = Segment.load( checkpoint, segments - 1 ).endNode();
+        if ( extendBooks > 0 )
+        {
+            Segment books = new Segment( nextNode, extendBooks, nextNode + extendBooks, numUsers,
+                    original.favoritesPerUser, true, layout, segmentSeed( added ), zipfExponent );
+            books.save( checkpoint, added++ );
+            nextNode = books.endNode();
+        }
+        if ( extendUsers > 0 )
+        {
+            new Segment( original.firstBook, original.books, nextNode, extendUsers,
+                    original.favoritesPerUser, false, layout, segmentSeed( added ), zipfExponent ).save(
+                    checkpoint, added++ );
+        }
+        if ( added == segments )
+        {
+            throw new IllegalArgumentException( "Set extendBooks or extendUsers to extend "
+                                                + getStoreDir() );
+        }
+        build( start( checkpoint.set( "segments", added ), segments ) );
+    }
+
+    private long segmentSeed( int segment )
+    {
+        return seed + segment * 0x9E3779B97F4A7C15L;
+    }
+
+    private static DatasetCheckpoint start( DatasetCheckpoint checkpoint, int segment )
+    {
+        return checkpoint.set( "segment", segment ).set( "phase", NODES ).set( "position", 0 );
+    }
+
+    private static final String NODES = "nodes", RELATIONSHIPS = "relationships", DONE = "done";
+
+    /**
+     * A part of the dataset created in one go: users favoriting a range of
+     * books, and those books unless an earlier segment created them. The
+     * dataset as first created is segment 0, {@code extend} adds more. The
+     * node ids of a segment are contiguous, books first.
+     * <p>
+     * With {@code favoritesPerUser} above one the favorites of the segment
+     * are spread over fewer users, so that users have that many favorites on
+     * average, among books all over the catalogue. The degrees and the order
+     * of the relationships of the books stay the same.
+     */
+    private static final class Segment
+    {
+        final long firstBook;
+        final int books;
+        final long firstUser;
+        final int usersPerBook;
+        final int favoritesPerUser;
+        final boolean newBooks;
+        final Layout layout;
+        final long seed;
+        final double zipfExponent;
+        private final long[] offsets;
+
+        Segment( long firstBook, long books, long firstUser, long usersPerBook,
+                int favoritesPerUser, boolean newBooks, Layout layout, long seed,
+                double zipfExponent )
+        {
+            if ( favoritesPerUser < 1 )
+            {
+                throw new IllegalArgumentException( "favoritesPerUser must be at least 1" );
+            }
+            if ( books > Integer.MAX_VALUE || usersPerBook >= Integer.MAX_VALUE )
+            {
+                throw new IllegalArgumentException( "Cannot generate " + books + " books with "
+                                                    + usersPerBook + " users each, the books and "
+                                                    + "the users of one book are counted in int" );
+            }
+            this.firstBook = firstBook;
+            this.books = (int) books;
+            this.firstUser = firstUser;
+            this.usersPerBook = (int) usersPerBook;
+            this.favoritesPerUser = favoritesPerUser;
+            this.newBooks = newBooks;
+            this.layout = layout;
+            this.seed = seed;
+            this.zipfExponent = zipfExponent;
+            this.offsets = zipfExponent > 0 ? zipfOffsets() : null;
+        }
+
+        /**
+         * @return the index of the first user of every book, and the total
+         *         number of users at the end. Every book gets at least one
+         *         user, the smallest books above one give up what that takes
+         *         beyond the total and the first book gets what rounding
+         *         leaves over, so the total is the same as with uniform
+         *         degrees.
+         */
+        private long[] zipfOffsets()
+        {
+            long users = users();
+            if ( users < books )
+            {
+                throw new IllegalArgumentException( "Too few users for one per book" );
+            }
+            double sum = 0;
+            for ( int book = 0; book < books; book++ )
+            {
+                sum += Math.pow( book + 1, -zipfExponent );
+            }
+            long[] result = new long[books + 1];
+            long assigned = 0;
+            for ( int book = 0; book < books; book++ )
+            {
+                long degree = Math.max( 1, (long) ( users * Math.pow( book + 1, -zipfExponent ) / sum ) );
+                result[book + 1] = degree;
+                assigned += degree;
+            }
+            // books rounded up to one user can take more than there are, so
+            // take the excess from the smallest books above one user, which
+            // keeps the degrees falling by rank, and give what is left over
+            // to the first one
+            for ( int book = books - 1; assigned > users && book >= 0; book-- )
+            {
+                long excess = Math.min( assigned - users, result[book + 1] - 1 );
+                result[book + 1] -= excess;
+                assigned -= excess;
+            }
+            result[1] += users - assigned;
+            for ( int book = 0; book < books; book++ )
+            {
+                if ( result[book + 1] < 1 || result[book + 1] >= Integer.MAX_VALUE )
+                {
+                    throw new IllegalArgumentException( "Book " + book + " would get "
+                                                        + result[book + 1] + " users" );
+                }
+                result[book + 1] += result[book];
+            }
+            return result;
+        }
+
+        static Segment load( DatasetCheckpoint checkpoint, int index )
+        {
+            String prefix = "segment." + index + ".";
+            return new Segment( checkpoint.getLong( prefix + "firstBook" ),
+                    checkpoint.getInt( prefix + "books" ), checkpoint.getLong( prefix + "firstUser" ),
+                    checkpoint.getInt( prefix + "usersPerBook" ),
+                    Integer.parseInt( checkpoint.get( prefix + "favoritesPerUser", "1" ) ),
+                    Boolean.parseBoolean( checkpoint.get( prefix + "newBooks" ) ),
+                    Layout.valueOf( checkpoint.get( prefix + "layout" ) ),
+                    checkpoint.getLong( prefix + "seed" ),
+                    Double.parseDouble( checkpoint.get( prefix + "zipfExponent", "0" ) ) );
+        }
+
+        void save( DatasetCheckpoint checkpoint, int index )
+        {
+            String prefix = "segment." + index + ".";
+            checkpoint.set( prefix + "firstBook", firstBook ).set( prefix + "books", books ).set(
+                    prefix + "firstUser", firstUser ).set( prefix + "usersPerBook", usersPerBook ).set(
+                    prefix + "favoritesPerUser", favoritesPerUser ).set( prefix + "newBooks", newBooks ).set( prefix + "layout", layout.name() ).set(
+                    prefix + "seed", seed ).set( prefix + "zipfExponent", zipfExponent );
+        }
+
+        long firstNode()
+        {
+            return newBooks ? firstBook : firstUser;
+        }
+
+        long users()
+        {
+            return (long) books * usersPerBook;
+        }
+
+        /**
+         * @return the number of user nodes, which is {@link #users()} unless
+         *         the users have several favorites each.
+         */
+        long userNodes()
+        {
+            return ( users() + favoritesPerUser - 1 ) / favoritesPerUser;
+        }
+
+        long endNode()
+        {
+            return firstUser + userNodes();
+        }
+
+        int degree( int book )
+        {
+            return offsets == null ? usersPerBook : (int) ( offsets[book + 1] - offsets[book] );
+        }
+
+        /**
+         * @return the index of the given favorite of a book among all
+         *         favorites of the segment, in book order.
+         */
+        long favorite( int book, int user )
+        {
+            return ( offsets == null ? (long) book * usersPerBook : offsets[book] ) + user;
+        }
+
+        /**
+         * @return the book of a favorite of the segment.
+         */
+        int bookOf( long favorite )
+        {
+            if ( offsets == null )
+            {
+                return (int) ( favorite / usersPerBook );
+            }
+            int low = 0, high = books - 1;
+            while ( low < high )
+            {
+                int mid = ( low + high + 1 ) >>> 1;
+                if ( offsets[mid] <= favorite )
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the favorite at the given position in a pseudo random order
+         *         of all favorites of the segment: a Feistel network over the
+         *         smallest even number of bits covering them, applied again
+         *         until the result is one of them, which makes it a
+         *         permutation computable for any position on its own.
+         */
+        long shuffled( long position )
+        {
+            long total = users();
+            int half = 1;
+            while ( 1L << ( 2 * half ) < total )
+            {
+                half++;
+            }
+            long mask = ( 1L << half ) - 1;
+            long value = position;
+            do
+            {
+                long left = value >>> half, right = value & mask;
+                for ( int round = 0; round < 4; round++ )
+                {
+                    long next = left ^ ( mix( seed + ( ( round + 1L ) << 32 ) + right ) & mask );
+                    left = right;
+                    right = next;
+                }
+                value = ( left << half ) | right;
+            }
+            while ( value >= total );
+            return value;
+        }
+
+        int maxDegree()
+        {
+            return degree( 0 );
+        }
+
+        long book( int book )
+        {
+            return firstBook + book;
+        }
+
+        /**
+         * @return the user of the given favorite of a book, favoriting the
+         *         target book. With several favorites per user the users of
+         *         a target book are a run of users from an offset of its own,
+         *         so no user favorites a book twice unless the book has more
+         *         favorites than there are users.
+         */
+        long user( int book, int target, int user )
+        {
+            if ( favoritesPerUser == 1 )
+            {
+                return firstUser + favorite( book, user );
+            }
+            long users = userNodes();
+            long start = ( mix( ~seed + ( target + 1 ) * 0x9E3779B97F4A7C15L ) >>> 1 ) % users;
+            return firstUser + ( start + user ) % users;
+        }
+
+        long bookSeed( int book )
+        {
+            // spreads consecutive books over the whole seed space
+            return mix( seed + ( book + 1 ) * 0x9E3779B97F4A7C15L );
+        }
+
+        /**
+         * The SplitMix64 finalizer.
+         */
+        private static long mix( long z )
+        {
+            z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+            z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+            return z ^ ( z >>> 31 );
+        }
+    }
+
+    /**
+     * Build the segments from the position of the checkpoint onwards. Every
+     * {@code checkpointSeconds} the batch inserter is shut down, which writes
+     * everything inserted so far to the store, and the position is saved
+     * with the high ids of the store before the inserter is opened again.
+     */
+    private void build( DatasetCheckpoint checkpoint ) throws IOException
+    {
+        checkpoint.setHighIds().save();
+        nextCheckpoint = System.currentTimeMillis() + checkpointSeconds * 1000L;
+        BatchInserter batch = new BatchInserterImpl( getStoreDir(), neo4jConfiguration );
+        boolean done = false;
+        try
+        {
+            int segments = checkpoint.getInt( "segments" );
+            for ( int index = checkpoint.getInt( "segment" ); index < segments; index++ )
+            {
+                Segment segment = Segment.load( checkpoint, index );
+                if ( NODES.equals( checkpoint.get( "phase" ) ) )
+                {
+                    batch = createNodes( batch, index, segment, checkpoint );
+                    checkpoint.set( "phase", RELATIONSHIPS ).set( "position", 0 );
+                }
+                batch = createRelationships( batch, index, segment, checkpoint );
+                start( checkpoint, index + 1 );
+            }
+            checkpoint.set( "phase", DONE );
+            done = true;
+        }
+        finally
+        {
+            batch.shutdown();
+            /* After a failure while inserting relationships the position is
+             * that of the last finished range of books, so the high ids of
+             * the last checkpoint are kept, and resume refuses to insert part
+             * of the range a second time.
+             */
+            if ( done || NODES.equals( checkpoint.get( "phase" ) ) )
+            {
+                checkpoint.setHighIds();
+            }
+            checkpoint.save();
+        }
+    }
+
+    private BatchInserter checkpoint( BatchInserter batch, DatasetCheckpoint checkpoint )
+            throws IOException
+    {
+        if ( checkpointSeconds <= 0 || System.currentTimeMillis() < nextCheckpoint )
+        {
+            return batch;
+        }
+        long start = System.currentTimeMillis();
+        batch.shutdown();
+        checkpoint.setHighIds().save();
+        System.out.printf( "Checkpoint at %s %s of segment %s took %.3f seconds.%n",
+                checkpoint.get( "phase" ), checkpoint.get( "position" ), checkpoint.get( "segment" ),
+                ( System.currentTimeMillis() - start ) / 1000.0 );
+        nextCheckpoint = System.currentTimeMillis() + checkpointSeconds * 1000L;
+        return new BatchInserterImpl( getStoreDir(), neo4jConfiguration );
+    }
+
+    /**
+     * Entries running on a store built by {@code create} record the layout,
+     * seed and degree distribution it was actually built with, from its
+     * dataset checkpoint, instead of those of the properties.
+     */
+    @Override
+    protected ResultRecord result( String entry, String metric )
+    {
+        ResultRecord result = super.result( entry, metric );
+        if ( entry.equals( "create" ) )
+        {
+            return result;
+        }
+        DatasetCheckpoint checkpoint;
+        try
+        {
+            checkpoint = DatasetCheckpoint.load( getStoreDir() );
+        }
+        catch ( IOException noCheckpoint )
+        {
+            return result;
+        }
+        Segment dataset = Segment.load( checkpoint, 0 );
+        result.set( "settings", "layout", dataset.layout.name() );
+        result.set( "settings", "seed", dataset.seed );
+        result.set( "settings", "degrees", dataset.zipfExponent > 0 ? Degrees.ZIPF.name()
+                : Degrees.UNIFORM.name() );
+        result.set( "settings", "zipfExponent", dataset.zipfExponent );
+        return result.set( "params", "segments", checkpoint.getInt( "segments" ) );
+    }
+
+    private ResultRecord createResult( String metric, int segment )
+    {
+        ResultRecord result = result( "create", metric );
+        return segment == 0 ? result : result.set( "params", "segment", segment );
+    }
+
+    private BatchInserter createNodes( BatchInserter batch, int index, Segment segment,
+            DatasetCheckpoint checkpoint ) throws IOException
+    {
+        long first = segment.firstNode(), end = segment.endNode();
+        long total = end - first - checkpoint.getLong( "position" );
+        System.out.println( "Inserting nodes..." );
+        long start = System.currentTimeMillis();
+        ProgressReporter progress = progress( "nodes", total );
+        long nodeid = first + checkpoint.getLong( "position" );
+        try
+        {
+            for ( ; nodeid < end; nodeid++ )
+            {
+                batch.createNode( nodeid, properties( segment, nodeid ) );
+                progress.increment();
+                if ( ( nodeid - first + 1 ) % 65536 == 0 )
+                {
+                    checkpoint.set( "position", nodeid - first + 1 );
+                    batch = checkpoint( batch, checkpoint );
+                }
+            }
+        }
+        finally
+        {
+            progress.stop();
+            checkpoint.set( "position", nodeid - first );
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println( "Inserted " + total + " nodes in "
+                            + ( time / 1000.0 ) + " seconds.\nThat is "
+                            + ( ( (double) total ) / ( (double) time ) )
+                            + " nodes per millisecond." );
+        report( createResult( "nodes", index ).throughput( ( (double) total ) / ( (double) time ),
+                "nodes/ms" ) );
+        return batch;
+    }
+
+    private BatchInserter createRelationships( BatchInserter batch, int index, Segment segment,
+            DatasetCheckpoint checkpoint ) throws IOException
+    {
+        int position = checkpoint.getInt( "position" );
+        long total = segment.newBooks ? segment.books - position : 0;
+        for ( int book = position; book < segment.books; book++ )
+        {
+            total += segment.degree( book );
+        }
+        System.out.println( "Inserting relationships..." );
+        long start = System.currentTimeMillis();
+        ProgressReporter progress = progress( "relationships", total );
+        BatchPipeline pipeline = null;
+        long[] favorites = null;
+        /* Every batch buffer has room for the densest book, so the buffers
+         * are limited to an eighth of the heap in total, and to one per book.
+         */
+        long bufferBytes = 16L * ( segment.maxDegree() + 1 );
+        int capacity = (int) Math.max( 2, Math.min( Math.min( pipelineCapacity, segment.books ),
+                Runtime.getRuntime().maxMemory() / 8 / bufferBytes ) );
+        if ( generatorThreads > 0 )
+        {
+            pipeline = new BatchPipeline( generatorThreads, capacity, segment.maxDegree() + 1, 2 );
+        }
+        else
+        {
+            favorites = new long[2 * ( segment.maxDegree() + 1 )];
+        }
+        try
+        {
+            for ( int book = position, next; book < segment.books; book = next )
+            {
+                if ( pipeline != null )
+                {
+                    /* The pipeline is drained at every checkpoint, so give it
+                     * enough books at a time to keep the generators busy.
+                     */
+                    next = (int) Math.min( segment.books, book + 16L * capacity );
+                    createRelationships( batch, pipeline, segment, book, next, progress );
+                }
+                else
+                {
+                    next = book + 1;
+                    int length = 2 * generateFavorites( segment, book, random, favorites );
+                    for ( int i = 0; i < length; i += 2 )
+                    {
+                        favorite( batch, favorites[i], favorites[i + 1] );
+                        progress.increment();
+                    }
+                }
+                checkpoint.set( "position", next );
+                batch = checkpoint( batch, checkpoint );
+            }
+        }
+        finally
+        {
+            progress.stop();
+        }
+        if ( pipeline != null )
+        {
+            pipeline.printStatistics();
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println( "Inserted "
+                            + total
+                            + " relationships in "
+                            + ( time / 1000.0 )
+                            + " seconds.\nThat is "
+                            + ( ( (double) total ) / ( (double) time ) )
+                            + " relationships per millisecond." );
+        report( createResult( "relationships", index ).throughput(
+                ( (double) total ) / ( (double) time ), "relationships/ms" ) );
+        return batch;
+    }
+
+    /**
+     * Generate the relationships of one book as pairs of user and book node
+     * ids, in the order they are to be inserted.
+     *
+     * @return the number of relationships generated.
+     */
+    private int generateFavorites( Segment segment, int book, Random random, long[] favorites )
+    {
+        /* Reference nodes in semi-random order as to emulate a structure
+         * of the relationships being created incrementally, which is what
+         * we would see in an actual application. This means that when we
+         * traverse the relationships from any given nodes they will not
+         * have consecutive IDs, and thus be scattered across the
+         * relationship store, reflecting the state it would be in if
+         * created incrementally from actual usage.
+         *
+         * The random source is reseeded for every book, so that the same
+         * seed gives the same store regardless of which thread generated
+         * which book.
+         */
+        random.setSeed( segment.bookSeed( book ) );
+        Layout layout = segment.layout;
+        // where to place 0, users added to existing books have no reference
+        int degree = segment.degree( book );
+        int offset = segment.newBooks ? layout.referenceOffset( degree, random ) : -1;
+        int pos = 0;
+        for ( int user = 0; user < degree; user++ )
+        {
+            if ( user == offset )
+            {
+                favorites[pos++] = 0;
+                favorites[pos++] = segment.book( book );
+            }
+            if ( layout == Layout.SHUFFLED )
+            {
+                long favorite = segment.shuffled( segment.favorite( book, user ) );
+                int target = segment.bookOf( favorite );
+                int index = (int) ( favorite - segment.favorite( target, 0 ) );
+                favorites[pos++] = segment.user( target, target, index );
+                favorites[pos++] = segment.book( target );
+            }
+            else
+            {
+                int target = segment.offsets != null ? book : layout.book( book, user,
+                        segment.books, random );
+                favorites[pos++] = segment.user( book, target, user );
+                favorites[pos++] = segment.book( target );
+            }
+        }
+        return pos / 2;
+    }
+
+    private void createRelationships( final BatchInserter batch, BatchPipeline pipeline,
+            final Segment segment, final int firstBook, int endBook, final ProgressReporter progress )
+    {
+        final ThreadLocal<Random> randoms = new ThreadLocal<Random>()
+        {
+            @Override
+            protected Random initialValue()
+            {
+                return new Random();
+            }
+        };
+        pipeline.run( endBook - firstBook, new BatchPipeline.Producer()
+        {
+            public int produce( long sequence, long[] favorites )
+            {
+                return generateFavorites( segment, firstBook + (int) sequence, randoms.get(),
+                        favorites );
+            }
+        }, new BatchPipeline.Consumer()
+        {
+            public void consume( long[] favorites, int relationships )
+            {
+                for ( int i = 0; i < 2 * relationships; i += 2 )
+                {
+                    favorite( batch, favorites[i], favorites[i + 1] );
+                    progress.increment();
+                }
+            }
+        } );
+    }
+
+    private void favorite( BatchInserter batch, long usernode, long booknode )
+    {
+        batch.createRelationship( usernode, booknode, FAVORITE, null );
+    }
+
+    private Map<String, Object> properties( Segment segment, long nodeid )
+    {
+        if ( addNodeLabels )
+        {
+            Map<String, Object> result = new HashMap<String, Object>();
+            if ( nodeid < segment.firstUser )
+            {
+                result.put( "Book", (int) ( nodeid - segment.firstBook + 1 ) );
+            }
+            else
+            {
+                result.put( "User", (int) ( nodeid - segment.firstUser + 1 ) );
+            }
+            return result;
+        }
+        return null;
+    }
+
+    private ResultRecord traverse( GraphDatabaseService graphdb )
+    {
+        long total = totalUsers();
+        System.out.println( "Traversing graph using " + traversalMode.name().toLowerCase() );
+        DegreeBuckets bookLatency = new DegreeBuckets();
+        long allocated = IntrospectionAttribute.threadAllocatedBytes();
+        long time = System.currentTimeMillis();
+        final ProgressReporter progress = progress( "users", total );
+        Transaction tx = graphdb.beginTx();
+        try
+        {
+            if ( traversalMode == TraversalMode.VISITOR )
+            {
+                visit( graphdb.getReferenceNode(), new FavoriteVisitor()
+                {
+                    public void visitFavorite( Relationship favorite )
+                    {
+                        progress.increment();
+                    }
+                }, bookLatency );
+            }
+            else
+            {
+                for ( Node node : iterator( graphdb.getReferenceNode(), bookLatency ) )
+                {
+                    progress.increment();
+                }
+            }
+        }
+        finally
+        {
+            tx.finish();
+            progress.stop();
+        }
+        long count = progress.count();
+        time = System.currentTimeMillis() - time;
+        allocated = allocated < 0 ? -1 : IntrospectionAttribute.threadAllocatedBytes() - allocated;
+        System.out.println( "Counted " + count + " (of " + total
+                            + ") users in " + ( time / 1000.0 ) + " seconds." );
+        total += numBooks;
+        System.out.println( "Traversed " + total + " relationships in "
+                            + ( time / 1000.0 ) + " seconds.\nThat is "
+                            + ( ( (double) total ) / ( (double) time ) )
+                            + " relationships per millisecond." );
+        System.out.println( "Book expansion latency " + bookLatency.all() );
+        bookLatency.print();
+        return allocation( bookLatency.reportTo( result( "traverse", "relationships" ).throughput(
+                ( (double) total ) / ( (double) time ), "relationships/ms" ).latency(
+                bookLatency.all() ) ), allocated, total );
+    }
+
+    /**
+     * Traverse the graph by splitting the books of the reference node across
+     * a fork join pool, merging the per worker counts at the end.
+     *
+     * @return the result of the traversal, not yet reported.
+     */
+    private ResultRecord traverse( GraphDatabaseService graphdb, int threads )
+    {
+        final long total = totalUsers();
+        System.out.println( "Traversing graph using " + traversalMode.name().toLowerCase()
+                            + " on " + threads + " threads" );
+        long time = System.currentTimeMillis();
+        final Node start = graphdb.getReferenceNode();
+        final List<Relationship> books = new ArrayList<Relationship>(
+                (int) Math.min( numBooks, Integer.MAX_VALUE ) );
+        for ( Relationship rel : start.getRelationships( FAVORITE ) )
+        {
+            books.add( rel );
+        }
+        final ProgressReporter progress = progress( "users", total );
+        final AtomicLong allocated = new AtomicLong();
+        final List<DegreeBuckets> bookLatency = new ArrayList<DegreeBuckets>();
+        final ThreadLocal<DegreeBuckets> latency = new ThreadLocal<DegreeBuckets>()
+        {
+            @Override
+            protected DegreeBuckets initialValue()
+            {
+                DegreeBuckets buckets = new DegreeBuckets();
+                synchronized ( bookLatency )
+                {
+                    bookLatency.add( buckets );
+                }
+                return buckets;
+            }
+        };
+        /* Split the books down to a few per task for every thread rather than
+         * one range per thread. Even where the number of users per book is
+         * the same, where the books end up in the caches is not, so the
+         * threads finishing first steal the remaining tasks of the others
+         * instead of waiting for the slowest range.
+         */
+        final int leaf = Math.max( 1, books.size() / ( threads * 16 ) );
+        ForkJoinPool workers = new ForkJoinPool( threads );
+        try
+        {
+            long count = workers.invoke( new BookRange( new BookTraversal()
+            {
+                public long traverse( int from, int to )
+                {
+                    long allocation = IntrospectionAttribute.threadAllocatedBytes();
+                    DegreeBuckets buckets = latency.get();
+                    Counter counter = new Counter();
+                    for ( int book = from; book < to; book++ )
+                    {
+                        long bookStart = System.nanoTime();
+                        long before = counter.count;
+                        if ( traversalMode == TraversalMode.VISITOR )
+                        {
+                            visitBook( start, books.get( book ), counter );
+                        }
+                        else
+                        {
+                            Iterator<Node> users = users( start, books.get( book ) );
+                            for ( ; users.hasNext(); users.next() )
+                            {
+                                counter.count++;
+                            }
+                        }
+                        // the degree includes the relationship from the start node
+                        buckets.record( counter.count - before + 1, System.nanoTime() - bookStart );
+                        progress.add( counter.count - before );
+                    }
+                    if ( allocation >= 0 )
+                    {
+                        allocated.addAndGet( IntrospectionAttribute.threadAllocatedBytes() - allocation );
+                    }
+                    return counter.count;
+                }
+            }, 0, books.size(), leaf ) );
+            time = System.currentTimeMillis() - time;
+            System.out.println( "Counted " + count + " (of " + total + ") users in "
+                                + ( time / 1000.0 ) + " seconds." );
+        }
+        finally
+        {
+            workers.shutdownNow();
+            progress.stop();
+        }
+        DegreeBuckets allLatency = new DegreeBuckets();
+        for ( DegreeBuckets buckets : bookLatency )
+        {
+            allLatency.add( buckets );
+        }
+        double speed = ( (double) ( total + numBooks ) ) / ( (double) time );
+        System.out.printf( "Traversed %s relationships in %.3f seconds.%n"
+                           + "That is %.3f relationships per millisecond "
+                           + "(%.3f per thread) using %s threads.%n", total + numBooks,
+                time / 1000.0, speed, speed / threads, threads );
+        System.out.println( "Book expansion latency " + allLatency.all() );
+        allLatency.print();
+        long allocation = IntrospectionAttribute.threadAllocatedBytes() < 0 ? -1 : allocated.get();
+        return allocation( allLatency.reportTo( result( "traverse", "relationships" ).set(
+                "params", "threads", threads ).throughput( speed, "relationships/ms" ).latency(
+                allLatency.all() ) ), allocation, total + numBooks );
+    }
+
+    private interface BookTraversal
+    {
+        /**
+         * @return the number of users of the books from {@code from} up to,
+         *         but not including, {@code to}.
+         */
+        long traverse( int from, int to );
+    }
+
+    /**
+     * Traverses a range of books, split in halves on the fork join pool down
+     * to ranges of at most {@code leaf} books.
+     */
+    private static final class BookRange extends RecursiveTask<Long>
+    {
+        private final BookTraversal traversal;
+        private final int from, to, leaf;
+
+        BookRange( BookTraversal traversal, int from, int to, int leaf )
+        {
+            this.traversal = traversal;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            if ( to - from <= leaf )
+            {
+                return traversal.traverse( from, to );
+            }
+            int middle = ( from + to ) >>> 1;
+            BookRange first = new BookRange( traversal, from, middle, leaf );
+            first.fork();
+            long count = new BookRange( traversal, middle, to, leaf ).compute();
+            return count + first.join();
+        }
+    }
+
+    private ResultRecord allocation( ResultRecord result, long allocated, long relationships )
+    {
+        result.set( "metrics", "relationships", relationships );
+        if ( allocated >= 0 )
+        {
+            double perRelationship = ( (double) allocated ) / relationships;
+            System.out.printf( "Allocated %.3f bytes per relationship.%n", perRelationship );
+            result.set( "metrics", "allocatedBytesPerRelationship", perRelationship );
+        }
+        return result;
+    }
+
+    /**
+     * Visit the relationships from all users to all books of the start node,
+     * without creating any objects for the relationships other than those
+     * the kernel itself creates.
+     */
+    private void visit( Node start, FavoriteVisitor visitor, DegreeBuckets bookLatency )
+    {
+        for ( Relationship book : start.getRelationships( FAVORITE ) )
+        {
+            long bookStart = System.nanoTime();
+            int users = visitBook( start, book, visitor );
+            bookLatency.record( users + 1, System.nanoTime() - bookStart );
+        }
+    }
+
+    /**
+     * @return the number of relationships visited.
+     */
+    private int visitBook( Node start, Relationship book, FavoriteVisitor visitor )
+    {
+        /* The only relationship of a book leading back to the start node is
+         * the one we came from, so comparing relationship ids filters out the
+         * start node without looking up the node at the other end.
+         */
+        long startRelationship = book.getId();
+        int count = 0;
+        for ( Relationship favorite : book.getOtherNode( start ).getRelationships( FAVORITE ) )
+        {
+            if ( favorite.getId() != startRelationship )
+            {
+                visitor.visitFavorite( favorite );
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visit the relationships from all users to all books of the start node
+     * like {@link #visit(Node, FavoriteVisitor, DegreeBuckets)}, but stop
+     * after the first book that ends past the deadline.
+     *
+     * @return the number of relationships from users visited.
+     */
+    private long visitUntil( Node start, DegreeBuckets bookLatency, long deadline )
+    {
+        Counter counter = new Counter();
+        for ( Relationship book : start.getRelationships( FAVORITE ) )
+        {
+            long bookStart = System.nanoTime();
+            int users = visitBook( start, book, counter );
+            bookLatency.record( users + 1, System.nanoTime() - bookStart );
+            if ( System.currentTimeMillis() >= deadline )
+            {
+                break;
+            }
+        }
+        return counter.count;
+    }
+
+    private Iterable<Node> iterator( final Node start, final DegreeBuckets bookLatency )
+    {
+        /* Don't use the traverser framework, since it keeps a collection of
+         * visited nodes. For this traversal the memory overhead of that would
+         * require a too large heap and have a negative performance impact on
+         * the traversal. In part because it limits the portion of the heap
+         * available to be used by the Neo4j cache, and in part because the
+         * overhead of finding matches in the collection will grow
+         * unnecessarily as the size of it grows since there will never be any
+         * hits in the collection (except for the start node, and that is
+         * simple to check for by hand) due to how the data is constructed.
+         */
+        return new Iterable<Node>()
+        {
+            public Iterator<Node> iterator()
+            {
+                return new NestingIterator<Node, Relationship>(
+                        start.getRelationships( FAVORITE ).iterator() )
+                {
+                    /* The expansion of a book ends where the next one starts,
+                     * so the time between two nested iterators is the latency
+                     * of expanding the previous book. This leaves the last
+                     * book unrecorded, but costs no extra objects per book.
+                     */
+                    private long bookStart;
+                    private final Counter relationships = new Counter();
+
+                    @Override
+                    protected Iterator<Node> createNestedIterator(
+                            Relationship item )
+                    {
+                        long now = System.nanoTime();
+                        if ( bookStart != 0 )
+                        {
+                            bookLatency.record( relationships.count, now - bookStart );
+                        }
+                        bookStart = now;
+                        relationships.count = 0;
+                        return users( start, item, relationships );
+                    }
+                };
+            }
+        };
+    }
+
+    private Iterator<Node> users( Node start, Relationship book )
+    {
+        return users( start, book, null );
+    }
+
+    /**
+     * @param relationships counts the relationships of the book, including
+     *        the one from the start node, unless {@code null}.
+     */
+    private Iterator<Node> users( final Node start, Relationship book,
+            final Counter relationships )
+    {
+        final Node node = book.getOtherNode( start );
+        Iterator<Node> iter = new IteratorWrapper<Node, Relationship>(
+                node.getRelationships( FAVORITE ).iterator() )
+        {
+            @Override
+            protected Node underlyingObjectToObject( Relationship object )
+            {
+                if ( relationships != null )
+                {
+                    relationships.count++;
+                }
+                return object.getOtherNode( node );
+            }
+        };
+        return new FilteringIterator<Node>( iter )
+        {
+            @Override
+            protected boolean passes( Node user )
+            {
+                return !user.equals( start );
+            }
+        };
+    }
+}